@@ -0,0 +1,109 @@
+package io.github.leque.sexpr.tree;
+
+/**
+ * Representative inputs for the benchmarks. Each corpus is a single datum.
+ */
+final class Corpora {
+    static final String DEEP = "deep";
+    static final String WIDE = "wide";
+    static final String CODE = "code";
+    static final String STRINGS = "strings";
+    static final String NUMBERS = "numbers";
+    static final String BYTEVECTOR = "bytevector";
+
+    private Corpora() {
+    }
+
+    static String get(String name) {
+        switch (name) {
+            case DEEP:
+                // shallow enough that the ANTLR engine parses it rather than falling back to SExprReader
+                return deep(200);
+            case WIDE:
+                return wide(10000);
+            case CODE:
+                return code(200);
+            case STRINGS:
+                return strings(2000);
+            case NUMBERS:
+                return numbers(10000);
+            case BYTEVECTOR:
+                return bytevector(65536);
+            default:
+                throw new IllegalArgumentException("unknown corpus: " + name);
+        }
+    }
+
+    // (x0 (x1 (x2 ... ) 1) 0)
+    private static String deep(int depth) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; ++i) {
+            builder.append("(x").append(i).append(' ');
+        }
+        builder.append("'leaf");
+        for (int i = depth - 1; i >= 0; --i) {
+            builder.append(' ').append(i).append(')');
+        }
+        return builder.toString();
+    }
+
+    private static String wide(int width) {
+        StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < width; ++i) {
+            builder.append(i % 2 == 0 ? "item" : "#t").append(' ');
+        }
+        return builder.append(')').toString();
+    }
+
+    private static String code(int definitions) {
+        StringBuilder builder = new StringBuilder("(begin\n");
+        for (int i = 0; i < definitions; ++i) {
+            builder.append("  ;; definition ").append(i).append('\n')
+                    .append("  (define (loop-").append(i).append(" lst acc)\n")
+                    .append("    (if (null? lst)\n")
+                    .append("        (reverse acc)\n")
+                    .append("        (let ((x (car lst)))\n")
+                    .append("          (loop-").append(i).append(" (cdr lst) `(,(* x ").append(i).append(") ,@acc)))))\n");
+        }
+        return builder.append(")").toString();
+    }
+
+    private static String strings(int count) {
+        StringBuilder builder = new StringBuilder("#(");
+        for (int i = 0; i < count; ++i) {
+            builder.append("\"message ").append(i)
+                    .append(": the quick brown fox jumps over the lazy dog\\n\\t\\x3bb; \\\"quoted\\\" café\" ");
+        }
+        return builder.append(')').toString();
+    }
+
+    private static String numbers(int count) {
+        StringBuilder builder = new StringBuilder("#(");
+        for (int i = 0; i < count; ++i) {
+            switch (i % 4) {
+                case 0:
+                    builder.append(i * 7919L);
+                    break;
+                case 1:
+                    builder.append(-i);
+                    break;
+                case 2:
+                    builder.append("#x").append(Integer.toHexString(i));
+                    break;
+                default:
+                    builder.append(i).append('.').append(i % 1000).append("e2");
+                    break;
+            }
+            builder.append(' ');
+        }
+        return builder.append(')').toString();
+    }
+
+    private static String bytevector(int length) {
+        StringBuilder builder = new StringBuilder("#u8(");
+        for (int i = 0; i < length; ++i) {
+            builder.append((i * 31) & 0xff).append(' ');
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.leque.sexpr.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EqualityBenchmark {
+    @Param({Corpora.DEEP, Corpora.WIDE, Corpora.CODE, Corpora.STRINGS, Corpora.NUMBERS, Corpora.BYTEVECTOR})
+    public String corpus;
+
+    private SExpr left;
+    private SExpr right;
+
+    @Setup
+    public void setUp() {
+        String input = Corpora.get(corpus);
+        left = SExprParser.parse(input, SExprParser.Engine.READER);
+        right = SExprParser.parse(input, SExprParser.Engine.READER);
+    }
+
+    @Benchmark
+    public boolean equalsStructurally() {
+        return left.equals(right);
+    }
+
+    @Benchmark
+    public int hashCodeOfTree() {
+        return left.hashCode();
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.leque.sexpr.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncrementalBenchmark {
+    @Param({Corpora.CODE, Corpora.DEEP, Corpora.WIDE})
+    public String corpus;
+
+    private SExprDocument document;
+    // a space in the middle of the text, next to which another one is inserted
+    private int offset;
+
+    @Setup
+    public void setUp() {
+        document = SExprDocument.parse(Corpora.get(corpus));
+        offset = document.getText().indexOf(' ', document.getText().length() / 2);
+    }
+
+    @Benchmark
+    public SExprDocument full() {
+        String text = document.getText();
+        return SExprDocument.parse(text.substring(0, offset) + " " + text.substring(offset));
+    }
+
+    @Benchmark
+    public SExprDocument incremental() {
+        return document.edit(offset, 0, " ");
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.leque.sexpr.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelBenchmark {
+    // the number of copies of the corpus, each a top-level datum
+    @Param({"256"})
+    public int copies;
+
+    @Param({Corpora.CODE, Corpora.STRINGS})
+    public String corpus;
+
+    private byte[] input;
+
+    @Setup
+    public void setUp() {
+        input = (Corpora.get(corpus) + "\n").repeat(copies).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<SExpr> sequential() {
+        return SExprParser.parseAll(new ByteArrayInputStream(input)).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<SExpr> parallel() {
+        return SExprParser.parseAllParallel(input);
+    }
+}
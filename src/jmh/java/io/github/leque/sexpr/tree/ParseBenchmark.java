@@ -0,0 +1,60 @@
+package io.github.leque.sexpr.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({Corpora.DEEP, Corpora.WIDE, Corpora.CODE, Corpora.STRINGS, Corpora.NUMBERS, Corpora.BYTEVECTOR})
+    public String corpus;
+
+    @Param({"ANTLR", "READER"})
+    public SExprParser.Engine engine;
+
+    private String input;
+    private SExprCache cache;
+    private SExprInterner interner;
+
+    @Setup
+    public void setUp() {
+        input = Corpora.get(corpus);
+        cache = new SExprCache(64 << 20, engine, null);
+        interner = new SExprInterner(1 << 16);
+    }
+
+    @Benchmark
+    public SExpr parse() {
+        return SExprParser.parse(input, engine);
+    }
+
+    @Benchmark
+    public SExpr cached() {
+        return cache.parse(input);
+    }
+
+    @Benchmark
+    public SExpr interned() {
+        return SExprParser.parse(input, engine, null, interner);
+    }
+
+    @Benchmark
+    public SExprTape tape() {
+        return SExprTape.parse(input);
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.leque.sexpr.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// small inputs, for which setting up the lexer and the parser costs as much as parsing
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReuseBenchmark {
+    private static final String INPUT = "(service a (retry (max 3) (backoff 100)) \"x\" 1.5)";
+
+    private SExprParser.Reusable shared;
+    private SExprParser.Reusable confined;
+
+    @Setup
+    public void setUp() {
+        shared = new SExprParser.Reusable();
+        confined = new SExprParser.Reusable(new SExprParser.DfaCache(), null, null);
+    }
+
+    @Benchmark
+    public SExpr fresh() {
+        return SExprParser.parse(INPUT);
+    }
+
+    @Benchmark
+    public SExpr reused() {
+        return shared.parse(INPUT);
+    }
+
+    @Benchmark
+    public SExpr confined() {
+        return confined.parse(INPUT);
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.leque.sexpr.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+    @Param({Corpora.DEEP, Corpora.WIDE, Corpora.CODE, Corpora.STRINGS, Corpora.NUMBERS, Corpora.BYTEVECTOR})
+    public String corpus;
+
+    private byte[] input;
+
+    @Setup
+    public void setUp() {
+        input = Corpora.get(corpus).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public StructuralIndex wordwise() {
+        return StructuralIndex.of(input);
+    }
+
+    @Benchmark
+    public StructuralIndex scalar() {
+        return StructuralIndex.ofScalar(input, 0, input.length);
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.leque.sexpr.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+    @Param({Corpora.DEEP, Corpora.WIDE, Corpora.CODE, Corpora.STRINGS, Corpora.NUMBERS, Corpora.BYTEVECTOR})
+    public String corpus;
+
+    private SExpr expr;
+    private final SExprWriter writer = new SExprWriter();
+    private ByteBuffer utf8;
+
+    @Setup
+    public void setUp() {
+        expr = SExprParser.parse(Corpora.get(corpus), SExprParser.Engine.READER);
+        utf8 = ByteBuffer.allocate((int) writer.utf8Length(expr));
+    }
+
+    @Benchmark
+    public String toWrittenString() {
+        return expr.toWrittenString();
+    }
+
+    @Benchmark
+    public ByteBuffer writeUtf8() {
+        utf8.clear();
+        writer.writeUtf8(expr, utf8);
+        return utf8;
+    }
+
+    @Benchmark
+    public long writtenLength() {
+        return writer.writtenLength(expr);
+    }
+}
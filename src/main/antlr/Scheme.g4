@@ -139,17 +139,19 @@ CharacterName : A L A R M
   | S P A C E
   | T A B;
 
-LineComment : ';' (~[\r\n])* (LineEnding | EOF);
+// trivia goes to the hidden channel, so that the parser and its prediction never see it
+
+LineComment : ';' (~[\r\n])* (LineEnding | EOF) -> channel(HIDDEN);
 
 BlockComment : '#|'
                ( '#'*? BlockComment
                | ('#'* | '|'*) ~[#|])*?
                '|'*?
-               '|#';
+               '|#' -> channel(HIDDEN);
 
 String : '"' StringElement* '"';
 
-U8 : U '8';
+OpenBytevector : '#' U '8(';
 
 EscapedSymbol : '|' SymbolElement* '|';
 
@@ -158,19 +160,13 @@ Identifier
   | PeculiarIdentifier
   ;
 
-Whitespaces : Whitespace+;
+Whitespaces : Whitespace+ -> channel(HIDDEN);
 
 // grammars
 
-whiteSpaces : Whitespaces;
-
-lineComment : LineComment;
-
-blockComment : BlockComment;
-
 datumComment : '#;' sexpr;
 
-intertokenSpace : (whiteSpaces | lineComment | blockComment | datumComment)*;
+intertokenSpace : datumComment*;
 
 integer : Integer10;
 
@@ -198,11 +194,10 @@ escapedIdentifier: EscapedSymbol;
 
 string: String;
 
-bytevector: '#' U8 '(' (intertokenSpace (integer | integer2 | integer8 | integer16))* intertokenSpace ')';
-
-list: '(' sexpr* intertokenSpace ')';
+bytevector: OpenBytevector (intertokenSpace (integer | integer2 | integer8 | integer16))* intertokenSpace ')';
 
-dottedList: '(' sexpr+ intertokenSpace '.' sexpr intertokenSpace ')';
+// a single rule for proper and dotted lists, so that predicting one needs no lookahead up to the dot
+list: '(' (sexpr+ (intertokenSpace dot='.' sexpr)?)? intertokenSpace ')';
 
 vector: '#(' sexpr* intertokenSpace ')';
 
@@ -223,7 +218,7 @@ sexpr : intertokenSpace
  | char_ | hexChar | namedChar
  | string | identifier | escapedIdentifier
  | bytevector
- | list | dottedList | vector
+ | list | vector
  | abbreviation
  );
 
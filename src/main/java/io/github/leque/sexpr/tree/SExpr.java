@@ -7,11 +7,26 @@ import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
-public interface SExpr {
+/**
+ * An S-expression.
+ *
+ * <p>The hierarchy is sealed, so the node classes in {@link SExprs} can be matched exhaustively.
+ * The {@code getX()} accessors return an {@link Optional} for any node,
+ * while the direct accessors such as {@link #symbolName()} allocate nothing
+ * and throw {@link UnsupportedOperationException} for nodes of another type.
+ */
+public sealed interface SExpr permits SExprs.BooleanValue, SExprs.CharacterValue,
+        SExprs.NumberValue, SExprs.InfinityValue, SExprs.NanValue,
+        SExprs.StringValue, SExprs.SymbolValue, SExprs.BytevectorValue,
+        SExprs.CompoundValue {
     default boolean isBoolean() {
         return false;
     }
 
+    default boolean booleanValue() {
+        throw new UnsupportedOperationException("not a boolean");
+    }
+
     default Optional<Boolean> getBooleanValue() {
         return Optional.empty();
     }
@@ -24,6 +39,10 @@ public interface SExpr {
         return Optional.empty();
     }
 
+    default int codePoint() {
+        throw new UnsupportedOperationException("not a character");
+    }
+
     default boolean isNumber() {
         return false;
     }
@@ -32,6 +51,32 @@ public interface SExpr {
         return Optional.empty();
     }
 
+    default boolean isFixnum() {
+        return false;
+    }
+
+    /**
+     * Returns the value of a fixnum, an integer that fits in a {@code long}.
+     *
+     * @throws UnsupportedOperationException if this is not a fixnum
+     */
+    default long longValue() {
+        throw new UnsupportedOperationException("not a fixnum");
+    }
+
+    default boolean isFlonum() {
+        return false;
+    }
+
+    /**
+     * Returns the value of a number, an infinity or a NaN as a {@code double}.
+     *
+     * @throws UnsupportedOperationException if this is not a number
+     */
+    default double doubleValue() {
+        throw new UnsupportedOperationException("not a number");
+    }
+
     default boolean isInfinity() {
         return false;
     }
@@ -56,6 +101,10 @@ public interface SExpr {
         return Optional.empty();
     }
 
+    default String stringValue() {
+        throw new UnsupportedOperationException("not a string");
+    }
+
     default boolean isSymbol() {
         return false;
     }
@@ -64,6 +113,10 @@ public interface SExpr {
         return Optional.empty();
     }
 
+    default String symbolName() {
+        throw new UnsupportedOperationException("not a symbol");
+    }
+
     default boolean isBytevector() {
         return false;
     }
@@ -72,6 +125,17 @@ public interface SExpr {
         return Optional.empty();
     }
 
+    default int bytevectorLength() {
+        throw new UnsupportedOperationException("not a bytevector");
+    }
+
+    /**
+     * Returns the element of a bytevector at {@code index}, from 0 to 255.
+     */
+    default int bytevectorRef(int index) {
+        throw new UnsupportedOperationException("not a bytevector");
+    }
+
     default boolean isList() {
         return false;
     }
@@ -88,6 +152,20 @@ public interface SExpr {
         return Optional.empty();
     }
 
+    /**
+     * Returns the elements of a list or a vector, or the elements but the last of a dotted list.
+     */
+    default List<SExpr> elements() {
+        throw new UnsupportedOperationException("neither a list nor a vector");
+    }
+
+    /**
+     * Returns the last element of a dotted list.
+     */
+    default SExpr tail() {
+        throw new UnsupportedOperationException("not a dotted list");
+    }
+
     default boolean isVector() {
         return false;
     }
@@ -96,15 +174,13 @@ public interface SExpr {
         return Optional.empty();
     }
 
-    void writeTo(Appendable buffer) throws IOException;
+    <R> R accept(SExprVisitor<R> visitor);
+
+    default void writeTo(Appendable buffer) throws IOException {
+        SExprWriter.forCurrentThread().write(this, buffer);
+    }
 
     default String toWrittenString() {
-        StringBuilder builder = new StringBuilder();
-        try {
-            this.writeTo(builder);
-        } catch (IOException e) {
-            throw new IllegalStateException("must not happen");
-        }
-        return builder.toString();
+        return SExprWriter.forCurrentThread().writeToString(this);
     }
 }
@@ -0,0 +1,205 @@
+package io.github.leque.sexpr.tree;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link SExprHandler} that builds an {@link SExpr} tree from events.
+ */
+public class SExprBuilder implements SExprHandler {
+    private static final int RECENT_SYMBOLS_SIZE = 256;
+
+    private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+    private final SymbolTable symbols;
+    private final SExprInterner interner;
+    // small direct-mapped cache in front of symbols, so that hits need no String
+    private final SExpr[] recentSymbols;
+    private SExpr result;
+
+    public SExprBuilder() {
+        this(null);
+    }
+
+    /**
+     * Creates a builder that interns symbols in {@code symbols}, unless it is {@code null}.
+     */
+    public SExprBuilder(SymbolTable symbols) {
+        this(symbols, null);
+    }
+
+    /**
+     * Creates a builder that interns symbols in {@code symbols} and every datum in {@code interner},
+     * unless they are {@code null}.
+     */
+    public SExprBuilder(SymbolTable symbols, SExprInterner interner) {
+        this.symbols = symbols;
+        this.interner = interner;
+        this.recentSymbols = symbols == null ? null : new SExpr[RECENT_SYMBOLS_SIZE];
+    }
+
+    /**
+     * Returns the completed datum and resets this builder for the next one.
+     */
+    public SExpr getResult() {
+        if (result == null || !stack.isEmpty()) {
+            throw new IllegalStateException("incomplete datum: stack.size()=" + stack.size());
+        }
+        SExpr r = result;
+        result = null;
+        return r;
+    }
+
+    private static class Frame {
+        private final String abbreviation;
+        private final List<SExpr> elements = new ArrayList<>();
+        private boolean dotted;
+        private int dotIndex;
+        // the number of lists after a dot whose elements went directly into this frame
+        private int spliced;
+
+        Frame(String abbreviation) {
+            this.abbreviation = abbreviation;
+        }
+    }
+
+    private void pushValue(SExpr value) {
+        if (interner != null)
+            value = interner.intern(value);
+        Frame top = stack.peek();
+        if (top == null)
+            result = value;
+        else
+            top.elements.add(value);
+    }
+
+    @Override
+    public void startList() {
+        Frame top = stack.peek();
+        if (top != null && top.dotted && top.elements.size() == top.dotIndex) {
+            // (a . (b ...)) is (a b ...), so continue the list instead of flattening it later
+            top.dotted = false;
+            top.spliced++;
+            return;
+        }
+        stack.push(new Frame(null));
+    }
+
+    @Override
+    public void dot() {
+        Frame top = stack.getFirst();
+        top.dotted = true;
+        top.dotIndex = top.elements.size();
+    }
+
+    @Override
+    public void endList() {
+        Frame top = stack.getFirst();
+        if (top.spliced > 0) {
+            top.spliced--;
+            return;
+        }
+        Frame frame = stack.pop();
+        List<SExpr> elems = frame.elements;
+        if (frame.dotted) {
+            SExpr end = elems.remove(elems.size() - 1);
+            pushValue(SExprs.dottedListValue(elems, end));
+        } else {
+            pushValue(SExprs.listValue(elems));
+        }
+    }
+
+    @Override
+    public void startVector() {
+        stack.push(new Frame(null));
+    }
+
+    @Override
+    public void endVector() {
+        pushValue(SExprs.vectorValue(stack.pop().elements));
+    }
+
+    @Override
+    public void startAbbreviation(String name) {
+        stack.push(new Frame(name));
+    }
+
+    @Override
+    public void endAbbreviation() {
+        Frame frame = stack.pop();
+        SExpr head = symbols == null ? SExprs.abbreviationSymbolValue(frame.abbreviation) : symbolValue(frame.abbreviation);
+        pushValue(SExprs.listValue(head, frame.elements.get(0)));
+    }
+
+    @Override
+    public void booleanValue(boolean value) {
+        pushValue(value ? SExprs.trueValue() : SExprs.falseValue());
+    }
+
+    @Override
+    public void character(int codePoint) {
+        pushValue(SExprs.characterValue(codePoint));
+    }
+
+    @Override
+    public void integer(long value) {
+        pushValue(SExprs.numberValue(value));
+    }
+
+    @Override
+    public void integer(BigInteger value) {
+        pushValue(SExprs.numberValue(value));
+    }
+
+    @Override
+    public void flonum(double value) {
+        pushValue(SExprs.flonumValue(value));
+    }
+
+    @Override
+    public void flonum(BigDecimal value) {
+        pushValue(SExprs.numberValue(value));
+    }
+
+    @Override
+    public void infinity(boolean negative) {
+        pushValue(negative ? SExprs.negativeInfinityValue() : SExprs.positiveInfinityValue());
+    }
+
+    @Override
+    public void nan() {
+        pushValue(SExprs.nanValue());
+    }
+
+    @Override
+    public void string(CharSequence value) {
+        pushValue(SExprs.stringValue(value.toString()));
+    }
+
+    @Override
+    public void symbol(CharSequence name) {
+        pushValue(symbolValue(name));
+    }
+
+    private SExpr symbolValue(CharSequence name) {
+        if (symbols == null)
+            return SExprs.symbolValue(name.toString());
+        int h = 0;
+        for (int i = 0; i < name.length(); ++i)
+            h = 31 * h + name.charAt(i);
+        int slot = (h ^ (h >>> 16)) & (RECENT_SYMBOLS_SIZE - 1);
+        SExpr recent = recentSymbols[slot];
+        if (recent != null && recent.symbolName().contentEquals(name))
+            return recent;
+        SExpr symbol = symbols.intern(name.toString());
+        recentSymbols[slot] = symbol;
+        return symbol;
+    }
+
+    @Override
+    public void bytevector(byte[] elements) {
+        pushValue(SExprs.bytevectorValue(elements));
+    }
+}
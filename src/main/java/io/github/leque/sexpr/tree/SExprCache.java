@@ -0,0 +1,316 @@
+package io.github.leque.sexpr.tree;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe cache of parsed datums, for inputs that are parsed over and over.
+ *
+ * <p>Inputs are looked up by a 64-bit hash of their contents, and compared in full on a hit,
+ * so that a collision never returns the datum of another input.
+ * The cache is bounded by an estimate of the bytes retained by its entries, inputs included,
+ * and evicts the least recently used entries first.
+ * It is split into segments by hash, each with its own lock and its own share of the bound,
+ * and inputs are parsed outside of the locks.
+ * Inputs that cannot be parsed are not cached.
+ */
+public final class SExprCache {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int MAX_SEGMENTS = 16;
+    // the bound below which fewer segments are used, so that each can still hold large entries
+    private static final long MIN_SEGMENT_WEIGHT = 1 << 20;
+    // the key, the entry and their share of the map
+    private static final long ENTRY_WEIGHT = 96;
+
+    private final SExprParser.Engine engine;
+    private final SymbolTable symbols;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache retaining about {@code maximumWeight} bytes, parsing with {@link SExprParser.Engine#ANTLR}.
+     */
+    public SExprCache(long maximumWeight) {
+        this(maximumWeight, SExprParser.Engine.ANTLR, null);
+    }
+
+    /**
+     * Creates a cache retaining about {@code maximumWeight} bytes,
+     * parsing with {@code engine} and interning symbols in {@code symbols} unless it is {@code null}.
+     */
+    public SExprCache(long maximumWeight, SExprParser.Engine engine, SymbolTable symbols) {
+        if (maximumWeight < 0)
+            throw new IllegalArgumentException("negative maximum weight: " + maximumWeight);
+        this.engine = engine;
+        this.symbols = symbols;
+        int n = (int) Math.min(MAX_SEGMENTS, Math.max(1, Long.highestOneBit(maximumWeight / MIN_SEGMENT_WEIGHT)));
+        this.segments = new Segment[n];
+        for (int i = 0; i < n; ++i)
+            segments[i] = new Segment(maximumWeight / n);
+    }
+
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+
+        private Stats(long hitCount, long missCount, long evictionCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Returns the ratio of hits to lookups, or 1 if there was no lookup.
+         */
+        public double getHitRate() {
+            long lookups = hitCount + missCount;
+            return lookups == 0 ? 1.0 : (double) hitCount / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount + "}";
+        }
+    }
+
+    public SExpr parse(String input) {
+        Key key = new Key(hash(input), input);
+        SExpr cached = lookup(key);
+        if (cached != null)
+            return cached;
+        SExpr result = SExprParser.parse(input, engine, symbols);
+        store(key, result, 40L + 2L * input.length());
+        return result;
+    }
+
+    /**
+     * Parses UTF-8 {@code input}, which is copied if it has to be cached.
+     */
+    public SExpr parse(byte[] input) {
+        long hash = hash(input);
+        SExpr cached = lookup(new Key(hash, input));
+        if (cached != null)
+            return cached;
+        SExpr result = SExprParser.parse(ByteBuffer.wrap(input), engine, symbols);
+        store(new Key(hash, input.clone()), result, 16L + input.length);
+        return result;
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    /**
+     * Returns the number of cached datums.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the estimated number of bytes retained by the cached datums and their inputs.
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    private SExpr lookup(Key key) {
+        Segment segment = segmentFor(key.hash);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.entries.get(key);
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    private void store(Key key, SExpr value, long inputWeight) {
+        long weight = ENTRY_WEIGHT + inputWeight + weigh(value);
+        Segment segment = segmentFor(key.hash);
+        synchronized (segment) {
+            if (weight > segment.maximumWeight)
+                return;
+            Entry old = segment.entries.put(key, new Entry(value, weight));
+            if (old != null)
+                segment.weight -= old.weight;
+            segment.weight += weight;
+            Iterator<Entry> it = segment.entries.values().iterator();
+            while (segment.weight > segment.maximumWeight) {
+                Entry eldest = it.next();
+                it.remove();
+                segment.weight -= eldest.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 32) & (segments.length - 1)];
+    }
+
+    private static final class Segment {
+        private final long maximumWeight;
+        // in access order, the least recently used first
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+
+        Segment(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
+    }
+
+    private static final class Key {
+        private final long hash;
+        // a String or a byte[]
+        private final Object input;
+
+        Key(long hash, Object input) {
+            this.hash = hash;
+            this.input = input;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            if (hash != other.hash)
+                return false;
+            if (input instanceof byte[] && other.input instanceof byte[])
+                return Arrays.equals((byte[]) input, (byte[]) other.input);
+            return input.equals(other.input);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) hash;
+        }
+    }
+
+    private static final class Entry {
+        private final SExpr value;
+        private final long weight;
+
+        Entry(SExpr value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    // a rough estimate of the bytes retained by value, counting shared nodes once per reference
+    static long weigh(SExpr value) {
+        long[] weight = {0};
+        SExprWalker.walk(value, new SExprWalker.Listener() {
+            @Override
+            public SExprWalker.Action enter(SExpr expr, int depth) {
+                weight[0] += weighNode(expr);
+                return SExprWalker.Action.CONTINUE;
+            }
+        });
+        return weight[0];
+    }
+
+    private static long weighNode(SExpr expr) {
+        if (expr.isString())
+            return 16 + 24 + 16 + expr.stringValue().length();
+        if (expr.isSymbol())
+            return 16 + 24 + 16 + expr.symbolName().length();
+        if (expr.isBytevector())
+            return 16 + 16 + expr.bytevectorLength();
+        if (expr.isList() || expr.isVector() || expr.isDottedList())
+            // the node, its list and the array of the list
+            return 16 + 16 + 16 + 4L * expr.elements().size();
+        if (expr.isNumber() && !expr.isFixnum() && !expr.isFlonum())
+            // a BigDecimal and its BigInteger
+            return 16 + 40 + 40 + 16;
+        return 24;
+    }
+
+    static long hash(byte[] input) {
+        int n = input.length;
+        long h = n * K0;
+        int i = 0;
+        for (; i + Long.BYTES <= n; i += Long.BYTES)
+            h = mix(h, (long) LONGS.get(input, i));
+        long tail = 0;
+        for (int shift = 0; i < n; ++i, shift += 8)
+            tail |= (input[i] & 0xffL) << shift;
+        return finish(mix(h, tail));
+    }
+
+    static long hash(String input) {
+        int n = input.length();
+        long h = ~(n * K0);
+        int i = 0;
+        for (; i + 4 <= n; i += 4) {
+            long w = input.charAt(i) | (long) input.charAt(i + 1) << 16
+                    | (long) input.charAt(i + 2) << 32 | (long) input.charAt(i + 3) << 48;
+            h = mix(h, w);
+        }
+        long tail = 0;
+        for (int shift = 0; i < n; ++i, shift += 16)
+            tail |= (long) input.charAt(i) << shift;
+        return finish(mix(h, tail));
+    }
+
+    private static final long K0 = 0x9e3779b97f4a7c15L;
+    private static final long K1 = 0xbf58476d1ce4e5b9L;
+    private static final long K2 = 0x94d049bb133111ebL;
+
+    private static long mix(long h, long w) {
+        return Long.rotateLeft(h ^ (w * K1), 29) * K0;
+    }
+
+    // the finalizer of SplitMix64, so that every bit of the hash depends on every bit of the input
+    private static long finish(long h) {
+        h = (h ^ (h >>> 30)) * K1;
+        h = (h ^ (h >>> 27)) * K2;
+        return h ^ (h >>> 31);
+    }
+}
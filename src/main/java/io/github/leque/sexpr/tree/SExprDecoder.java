@@ -0,0 +1,223 @@
+package io.github.leque.sexpr.tree;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static io.github.leque.sexpr.tree.SExprEncoder.*;
+
+/**
+ * Decodes S-expressions written by {@link SExprEncoder} from a {@link ByteBuffer}.
+ * The buffer is read from its position, which is advanced past each decoded datum.
+ * Instances are not thread-safe.
+ */
+public final class SExprDecoder {
+    private final ByteBuffer in;
+    private final SymbolTable symbolTable;
+    private final List<SExpr> symbols = new ArrayList<>();
+    private boolean started;
+    private byte[] scratch = new byte[64];
+
+    private SExpr[][] elements = new SExpr[16][];
+    private byte[] kinds = new byte[16];
+    private int[] filled = new int[16];
+
+    public SExprDecoder(ByteBuffer in) {
+        this(in, null);
+    }
+
+    /**
+     * Creates a decoder that interns symbols in {@code symbols}, unless it is {@code null}.
+     */
+    public SExprDecoder(ByteBuffer in, SymbolTable symbols) {
+        this.in = in;
+        this.symbolTable = symbols;
+    }
+
+    /**
+     * Decodes the next datum, or returns empty at the end of the buffer.
+     */
+    public Optional<SExpr> decode() {
+        if (!in.hasRemaining())
+            return Optional.empty();
+        try {
+            if (!started) {
+                if (in.get() != MAGIC_0 || in.get() != MAGIC_1)
+                    throw error("not an encoded S-expression stream");
+                byte version = in.get();
+                if (version != VERSION)
+                    throw error("unsupported version: " + version);
+                started = true;
+                if (!in.hasRemaining())
+                    return Optional.empty();
+            }
+            return Optional.of(decodeTree());
+        } catch (BufferUnderflowException e) {
+            throw error("unexpected end of input");
+        } finally {
+            Arrays.fill(elements, null);
+        }
+    }
+
+    /**
+     * Decodes a stream holding a single datum.
+     */
+    public static SExpr decode(ByteBuffer in) {
+        return new SExprDecoder(in).decode().orElseThrow(() -> new RuntimeException("unexpected end of input"));
+    }
+
+    private RuntimeException error(String msg) {
+        return new RuntimeException("byte " + in.position() + ": " + msg);
+    }
+
+    private SExpr decodeTree() {
+        int sp = 0;
+        while (true) {
+            byte tag = in.get();
+            SExpr value;
+            if (tag == TAG_LIST || tag == TAG_DOTTED_LIST || tag == TAG_VECTOR) {
+                int count = getCount();
+                if (tag == TAG_DOTTED_LIST) {
+                    if (count == 0)
+                        throw error("dotted list without elements");
+                    count++;
+                }
+                if (count > 0) {
+                    if (sp == elements.length) {
+                        elements = Arrays.copyOf(elements, sp * 2);
+                        kinds = Arrays.copyOf(kinds, sp * 2);
+                        filled = Arrays.copyOf(filled, sp * 2);
+                    }
+                    elements[sp] = new SExpr[count];
+                    kinds[sp] = tag;
+                    filled[sp] = 0;
+                    sp++;
+                    continue;
+                }
+                value = tag == TAG_LIST ? SExprs.listValue() : SExprs.vectorValue();
+            } else {
+                value = decodeAtom(tag);
+            }
+            while (true) {
+                if (sp == 0)
+                    return value;
+                SExpr[] elems = elements[sp - 1];
+                elems[filled[sp - 1]++] = value;
+                if (filled[sp - 1] < elems.length)
+                    break;
+                List<SExpr> list = Arrays.asList(elems);
+                switch (kinds[sp - 1]) {
+                    case TAG_LIST:
+                        value = SExprs.listValue(list);
+                        break;
+                    case TAG_VECTOR:
+                        value = SExprs.vectorValue(list);
+                        break;
+                    default:
+                        value = SExprs.dottedListValue(list.subList(0, elems.length - 1), elems[elems.length - 1]);
+                        break;
+                }
+                elements[--sp] = null;
+            }
+        }
+    }
+
+    private SExpr decodeAtom(byte tag) {
+        switch (tag) {
+            case TAG_FALSE:
+                return SExprs.falseValue();
+            case TAG_TRUE:
+                return SExprs.trueValue();
+            case TAG_CHARACTER:
+                return SExprs.characterValue((int) getVarint());
+            case TAG_FIXNUM:
+                return SExprs.numberValue(unzigzag(getVarint()));
+            case TAG_FLONUM: {
+                long bits = 0;
+                for (int i = 0; i < 8; ++i)
+                    bits |= (in.get() & 0xffL) << (8 * i);
+                return SExprs.flonumValue(Double.longBitsToDouble(bits));
+            }
+            case TAG_DECIMAL: {
+                int scale = (int) unzigzag(getVarint());
+                int length = getCount();
+                if (length == 0)
+                    throw error("empty decimal");
+                byte[] unscaled = new byte[length];
+                in.get(unscaled);
+                return SExprs.numberValue(new BigDecimal(new BigInteger(unscaled), scale));
+            }
+            case TAG_POSITIVE_INFINITY:
+                return SExprs.positiveInfinityValue();
+            case TAG_NEGATIVE_INFINITY:
+                return SExprs.negativeInfinityValue();
+            case TAG_NAN:
+                return SExprs.nanValue();
+            case TAG_STRING:
+                return SExprs.stringValue(getUtf8());
+            case TAG_SYMBOL: {
+                String name = getUtf8();
+                SExpr symbol = symbolTable == null ? SExprs.symbolValue(name) : symbolTable.intern(name);
+                symbols.add(symbol);
+                return symbol;
+            }
+            case TAG_SYMBOL_REF: {
+                long id = getVarint();
+                if (id >= symbols.size())
+                    throw error("undefined symbol reference: " + id);
+                return symbols.get((int) id);
+            }
+            case TAG_BYTEVECTOR: {
+                byte[] bytes = new byte[getCount()];
+                in.get(bytes);
+                for (int i = 0; i < bytes.length; ++i)
+                    bytes[i] ^= 0x80;
+                return SExprs.bytevectorValue(bytes);
+            }
+            default:
+                throw error("unknown tag: " + tag);
+        }
+    }
+
+    private long getVarint() {
+        long n = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            n |= (long) (b & 0x7f) << shift;
+            if (b >= 0)
+                return n;
+        }
+        throw error("varint too long");
+    }
+
+    // a length, which must not exceed the remaining bytes since every element takes at least one
+    private int getCount() {
+        long n = getVarint();
+        if (n > in.remaining())
+            throw error("length out of range: " + n);
+        return (int) n;
+    }
+
+    private static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private String getUtf8() {
+        int length = getCount();
+        if (in.hasArray()) {
+            int offset = in.arrayOffset() + in.position();
+            in.position(in.position() + length);
+            return new String(in.array(), offset, length, StandardCharsets.UTF_8);
+        }
+        if (scratch.length < length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        in.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,462 @@
+package io.github.leque.sexpr.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A text of datums that can be parsed again incrementally after edits.
+ *
+ * <p>Besides the datums, a document keeps the syntax tree of its text.
+ * A node of the tree knows its length and its distance from the previous node, but not its absolute position,
+ * so that nodes can be shared between a document and the documents edited from it.
+ *
+ * <p>After an edit, the innermost list, vector or abbreviation around the edit is found,
+ * and only the text of its elements touched by the edit is read again, up to the nearest spaces around it.
+ * If that text cannot be read on its own, for example because the edit unbalanced parentheses or opened a string,
+ * the text around the edit in the enclosing list is tried instead, and so on up to the whole text.
+ * The other datums are reused as they are, and only the lists, vectors and abbreviations around the edit are rebuilt.
+ * The text itself is a {@link String}, so it is still copied on each edit.
+ *
+ * <p>Documents are immutable.
+ */
+public final class SExprDocument {
+    private static final int ROOT = 0;
+    private static final int ATOM = 1;
+    private static final int LIST = 2;
+    private static final int VECTOR = 3;
+    private static final int ABBREVIATION = 4;
+
+    private static final Node[] NO_NODES = new Node[0];
+
+    private static final class Node {
+        private final int kind;
+        // the distance from the end of the previous sibling, or from the start of the contents of the parent
+        private final int gap;
+        private final int length;
+        // the length of the opening parenthesis or prefix
+        private final int open;
+        private final Node[] children;
+        // the index of the tail of a dotted list, or -1
+        private final int dot;
+        private final String abbreviation;
+        private final SExpr value;
+
+        Node(int kind, int gap, int length, int open, Node[] children, int dot, String abbreviation, SExpr value) {
+            this.kind = kind;
+            this.gap = gap;
+            this.length = length;
+            this.open = open;
+            this.children = children;
+            this.dot = dot;
+            this.abbreviation = abbreviation;
+            this.value = value;
+        }
+
+        Node withGap(int gap) {
+            return gap == this.gap ? this : new Node(kind, gap, length, open, children, dot, abbreviation, value);
+        }
+
+        // the length of the closing parenthesis
+        int close() {
+            return kind == LIST || kind == VECTOR ? 1 : 0;
+        }
+    }
+
+    /**
+     * A replacement of {@code removedLength} chars at {@code offset} by {@code insertedText}.
+     */
+    public static final class TextEdit {
+        private final int offset;
+        private final int removedLength;
+        private final String insertedText;
+
+        public TextEdit(int offset, int removedLength, String insertedText) {
+            if (offset < 0 || removedLength < 0)
+                throw new IllegalArgumentException("negative offset or length: " + offset + ", " + removedLength);
+            this.offset = offset;
+            this.removedLength = removedLength;
+            this.insertedText = Objects.requireNonNull(insertedText);
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getRemovedLength() {
+            return removedLength;
+        }
+
+        public String getInsertedText() {
+            return insertedText;
+        }
+
+        @Override
+        public String toString() {
+            return "TextEdit{offset=" + offset + ", removedLength=" + removedLength
+                    + ", insertedText='" + insertedText + "'}";
+        }
+    }
+
+    private final String text;
+    private final SymbolTable symbols;
+    private final Node root;
+    private final List<SExpr> datums;
+    private final Set<SExpr> changed;
+
+    private SExprDocument(String text, SymbolTable symbols, Node root, Set<SExpr> changed) {
+        this.text = text;
+        this.symbols = symbols;
+        this.root = root;
+        SExpr[] values = new SExpr[root.children.length];
+        for (int i = 0; i < values.length; ++i)
+            values[i] = root.children[i].value;
+        this.datums = List.of(values);
+        this.changed = Collections.unmodifiableSet(changed);
+    }
+
+    /**
+     * @throws RuntimeException if {@code text} is not a sequence of datums
+     */
+    public static SExprDocument parse(String text) {
+        return parse(text, null);
+    }
+
+    /**
+     * Parses {@code text}, interning symbols in {@code symbols} unless it is {@code null}.
+     *
+     * @throws RuntimeException if {@code text} is not a sequence of datums
+     */
+    public static SExprDocument parse(String text, SymbolTable symbols) {
+        Node root = new Node(ROOT, 0, text.length(), 0, read(text, 0, text.length(), symbols), -1, null, null);
+        Set<SExpr> changed = newIdentitySet();
+        for (Node datum : root.children)
+            changed.add(datum.value);
+        return new SExprDocument(text, symbols, root, changed);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<SExpr> getDatums() {
+        return datums;
+    }
+
+    /**
+     * Returns the nodes which are new in this document, compared to the one it was edited from:
+     * the datums which were read again, and the lists, vectors and abbreviations rebuilt around them.
+     * The elements of the datums read again are not included.
+     * For a parsed document, these are all the datums.
+     */
+    public Set<SExpr> getChangedNodes() {
+        return changed;
+    }
+
+    public SExprDocument edit(int offset, int removedLength, String insertedText) {
+        return edit(List.of(new TextEdit(offset, removedLength, insertedText)));
+    }
+
+    /**
+     * Applies {@code edits} one after another, the offset of each being in the text edited by the previous ones.
+     *
+     * @throws RuntimeException if the edited text is not a sequence of datums
+     */
+    public SExprDocument edit(List<TextEdit> edits) {
+        Set<SExpr> candidates = newIdentitySet();
+        String t = text;
+        Node r = root;
+        for (TextEdit edit : edits) {
+            int offset = edit.offset;
+            int removed = edit.removedLength;
+            Objects.checkFromIndexSize(offset, removed, t.length());
+            String newText = t.substring(0, offset) + edit.insertedText + t.substring(offset + removed);
+            if (r != null) {
+                try {
+                    r = apply(r, newText, offset, removed, edit.insertedText.length() - removed, candidates);
+                } catch (RuntimeException e) {
+                    // only the text after all the edits has to be read
+                    r = null;
+                }
+            }
+            t = newText;
+        }
+        if (r == null)
+            return parse(t, symbols);
+        if (edits.size() == 1)
+            return new SExprDocument(t, symbols, r, candidates);
+        // a later edit may have read again a datum holding nodes changed by an earlier one
+        Set<SExpr> changed = newIdentitySet();
+        collectChanged(r, candidates, changed);
+        return new SExprDocument(t, symbols, r, changed);
+    }
+
+    private static Set<SExpr> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static void collectChanged(Node node, Set<SExpr> candidates, Set<SExpr> changed) {
+        for (Node child : node.children) {
+            if (candidates.contains(child.value)) {
+                changed.add(child.value);
+                collectChanged(child, candidates, changed);
+            }
+        }
+    }
+
+    private Node apply(Node root, String newText, int offset, int removed, int delta, Set<SExpr> changed) {
+        // the nodes from the root down to the innermost one whose contents contain the edit,
+        // with their absolute starts and their indexes in their parents
+        List<Node> path = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        path.add(root);
+        starts.add(0);
+        indexes.add(-1);
+        Node node = root;
+        int nodeStart = 0;
+        descend:
+        while (true) {
+            int end = nodeStart + node.open;
+            for (int i = 0; i < node.children.length; ++i) {
+                Node child = node.children[i];
+                int start = end + child.gap;
+                end = start + child.length;
+                if (start > offset)
+                    break;
+                // an edit just after the prefix of an abbreviation may change the prefix, as in , and @
+                int inside = start + child.open + (child.kind == ABBREVIATION ? 1 : 0);
+                if (child.kind != ATOM && inside <= offset && offset + removed < end) {
+                    path.add(child);
+                    starts.add(start);
+                    indexes.add(i);
+                    node = child;
+                    nodeStart = start;
+                    continue descend;
+                }
+            }
+            break;
+        }
+
+        for (int level = path.size() - 1; level >= 0; --level) {
+            Node replaced = reread(path.get(level), starts.get(level), newText, offset, removed, delta, changed);
+            if (replaced == null)
+                continue;
+            // rebuild the nodes around the one read again
+            for (int l = level - 1; l >= 0; --l) {
+                Node parent = path.get(l);
+                Node[] children = parent.children.clone();
+                children[indexes.get(l + 1)] = replaced;
+                replaced = rebuild(parent, children, parent.dot, delta, changed);
+            }
+            return replaced;
+        }
+        Node[] nodes = read(newText, 0, newText.length(), symbols);
+        for (Node child : root.children)
+            changed.remove(child.value);
+        for (Node child : nodes)
+            changed.add(child.value);
+        return new Node(ROOT, 0, newText.length(), 0, nodes, -1, null, null);
+    }
+
+    // reads again the children of node from the one before the edit to the one after it,
+    // returning node with the new children, or null if they cannot be read on their own
+    private Node reread(Node node, int nodeStart, String newText, int offset, int removed, int delta,
+                        Set<SExpr> changed) {
+        Node[] children = node.children;
+        int n = children.length;
+        int contentStart = nodeStart + node.open;
+        int contentEnd = nodeStart + node.length - node.close();
+        int[] starts = new int[n];
+        int[] ends = new int[n];
+        int end = contentStart;
+        for (int i = 0; i < n; ++i) {
+            starts[i] = end + children[i].gap;
+            ends[i] = end = starts[i] + children[i].length;
+        }
+        // the children from from to to - 1 are read again, with the text around them,
+        // which starts and ends next to spaces so that no token may run across its ends
+        int from = 0;
+        while (from < n && ends[from] < offset)
+            from++;
+        while (from > 0 && !isSpace(newText.charAt(ends[from - 1])))
+            from--;
+        int to = from;
+        while (to < n && starts[to] <= offset + removed)
+            to++;
+        while (to < n && !isSpace(newText.charAt(starts[to] - 1 + delta)))
+            to++;
+        int windowStart = from > 0 ? ends[from - 1] : contentStart;
+        int windowEnd = to < n ? starts[to] : contentEnd;
+        if (node.kind == ABBREVIATION && to == n && contentEnd + delta < newText.length()
+                && !isSpace(newText.charAt(contentEnd + delta)))
+            // nothing closes the abbreviation, so its datum may run into what follows
+            return null;
+        int dot = node.dot;
+        if (dot >= 0 && from <= dot && dot <= to)
+            // the dot, which is before the tail, would be read again on its own
+            return null;
+
+        boolean whole = node.kind == ROOT && from == 0 && to == n;
+        if (!whole && mayEndInLineComment(newText, windowStart, windowEnd + delta))
+            // a line comment would run past the end of the text read again
+            return null;
+        Node[] nodes;
+        try {
+            nodes = read(newText, windowStart, windowEnd + delta, symbols);
+        } catch (RuntimeException e) {
+            if (whole)
+                throw e;
+            return null;
+        }
+        if (dot >= 0) {
+            if (from > dot && nodes.length > 0)
+                // nothing may follow the tail
+                return null;
+            if (to < dot)
+                dot += nodes.length - (to - from);
+        }
+        Node[] result = new Node[n - (to - from) + nodes.length];
+        if (node.kind == ABBREVIATION && result.length != 1)
+            return null;
+        System.arraycopy(children, 0, result, 0, from);
+        // before adding the new values, which may be the same shared objects as replaced ones
+        for (int i = from; i < to; ++i)
+            changed.remove(children[i].value);
+        int previousEnd = from > 0 ? ends[from - 1] : contentStart;
+        end = windowStart;
+        for (int i = 0; i < nodes.length; ++i) {
+            Node child = nodes[i];
+            int start = end + child.gap;
+            end = start + child.length;
+            result[from + i] = i == 0 ? child.withGap(start - previousEnd) : child;
+            changed.add(child.value);
+        }
+        if (nodes.length == 0)
+            end = previousEnd;
+        for (int i = to; i < n; ++i)
+            result[from + nodes.length + i - to] = i == to ? children[i].withGap(starts[i] + delta - end) : children[i];
+        return rebuild(node, result, dot, delta, changed);
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    // whether the last line of text[from, to) has a semicolon, which may start a comment
+    private static boolean mayEndInLineComment(String text, int from, int to) {
+        for (int i = to - 1; i >= from; --i) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r')
+                return false;
+            if (c == ';')
+                return true;
+        }
+        return false;
+    }
+
+    private Node rebuild(Node node, Node[] children, int dot, int delta, Set<SExpr> changed) {
+        SExpr value = null;
+        if (node.kind != ROOT) {
+            value = valueOf(node.kind, children, dot, node.abbreviation, symbols);
+            changed.remove(node.value);
+            changed.add(value);
+        }
+        return new Node(node.kind, node.gap, node.length + delta, node.open, children, dot, node.abbreviation, value);
+    }
+
+    // reads all datums of text[from, to), the gap of the first one being counted from from
+    private static Node[] read(String text, int from, int to, SymbolTable symbols) {
+        SExprReader reader = new SExprReader(text.subSequence(from, to));
+        SExprBuilder atoms = new SExprBuilder(symbols);
+        ArrayDeque<Frame> stack = new ArrayDeque<>();
+        Frame top = new Frame(ROOT, 0, 0, null);
+        while (true) {
+            SExprReader.Event e = reader.nextEvent();
+            int start = (int) reader.getStartOffset();
+            int end = (int) reader.getEndOffset();
+            switch (e) {
+                case END_OF_INPUT:
+                    return top.children.toArray(NO_NODES);
+                case START_LIST:
+                    stack.push(top);
+                    top = new Frame(LIST, start, end, null);
+                    break;
+                case START_VECTOR:
+                    stack.push(top);
+                    top = new Frame(VECTOR, start, end, null);
+                    break;
+                case START_ABBREVIATION:
+                    stack.push(top);
+                    top = new Frame(ABBREVIATION, start, end, reader.getAbbreviation());
+                    break;
+                case DOT:
+                    top.dot = top.children.size();
+                    break;
+                case END_LIST:
+                case END_VECTOR:
+                case END_ABBREVIATION: {
+                    Frame frame = top;
+                    top = stack.pop();
+                    if (e == SExprReader.Event.END_ABBREVIATION)
+                        // an abbreviation ends with its datum
+                        end = frame.previousEnd;
+                    Node[] children = frame.children.toArray(NO_NODES);
+                    SExpr value = valueOf(frame.kind, children, frame.dot, frame.abbreviation, symbols);
+                    top.add(new Node(frame.kind, 0, end - frame.start, frame.contentStart - frame.start,
+                            children, frame.dot, frame.abbreviation, value), frame.start, end);
+                    break;
+                }
+                default:
+                    reader.report(atoms);
+                    top.add(new Node(ATOM, 0, end - start, 0, NO_NODES, -1, null, atoms.getResult()), start, end);
+                    break;
+            }
+        }
+    }
+
+    private static final class Frame {
+        private final int kind;
+        private final int start;
+        private final int contentStart;
+        private final String abbreviation;
+        private final List<Node> children = new ArrayList<>();
+        private int previousEnd;
+        private int dot = -1;
+
+        Frame(int kind, int start, int contentStart, String abbreviation) {
+            this.kind = kind;
+            this.start = start;
+            this.contentStart = contentStart;
+            this.abbreviation = abbreviation;
+            this.previousEnd = contentStart;
+        }
+
+        void add(Node node, int start, int end) {
+            children.add(node.withGap(start - previousEnd));
+            previousEnd = end;
+        }
+    }
+
+    private static SExpr valueOf(int kind, Node[] children, int dot, String abbreviation, SymbolTable symbols) {
+        SExpr[] values = new SExpr[children.length];
+        for (int i = 0; i < children.length; ++i)
+            values[i] = children[i].value;
+        switch (kind) {
+            case VECTOR:
+                return SExprs.vectorValue(values);
+            case ABBREVIATION:
+                return SExprs.listValue(symbols == null ? SExprs.abbreviationSymbolValue(abbreviation) : symbols.intern(abbreviation),
+                        values[0]);
+            default:
+                if (dot >= 0)
+                    return SExprs.dottedListValue(Arrays.asList(values).subList(0, dot), values[dot]);
+                return SExprs.listValue(values);
+        }
+    }
+}
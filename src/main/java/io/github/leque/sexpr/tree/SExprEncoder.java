@@ -0,0 +1,254 @@
+package io.github.leque.sexpr.tree;
+
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes S-expressions in a compact binary format, read back by {@link SExprDecoder}.
+ *
+ * <p>A stream starts with the magic bytes {@code "SX"} and a version byte, followed by datums.
+ * Each datum is a tag byte and a payload:
+ * <ul>
+ *     <li>booleans, infinities and NaN have no payload;</li>
+ *     <li>characters are an unsigned varint code point;</li>
+ *     <li>fixnums are a zigzag varint, flonums 8 little-endian bytes of an IEEE double,
+ *     and other numbers a zigzag varint scale followed by a length-prefixed two's complement unscaled value;</li>
+ *     <li>strings are a varint byte length followed by UTF-8;</li>
+ *     <li>a symbol is encoded like a string on its first occurrence in a stream,
+ *     and as a varint index into the symbols seen so far after that;</li>
+ *     <li>bytevectors are a varint length followed by the raw bytes;</li>
+ *     <li>lists and vectors are a varint count followed by the elements,
+ *     and dotted lists are the same followed by the tail.</li>
+ * </ul>
+ * Instances are not thread-safe. Each instance is one stream and keeps its symbol table across calls.
+ */
+public final class SExprEncoder {
+    static final byte MAGIC_0 = 'S';
+    static final byte MAGIC_1 = 'X';
+    static final byte VERSION = 1;
+
+    static final byte TAG_FALSE = 0;
+    static final byte TAG_TRUE = 1;
+    static final byte TAG_CHARACTER = 2;
+    static final byte TAG_FIXNUM = 3;
+    static final byte TAG_FLONUM = 4;
+    static final byte TAG_DECIMAL = 5;
+    static final byte TAG_POSITIVE_INFINITY = 6;
+    static final byte TAG_NEGATIVE_INFINITY = 7;
+    static final byte TAG_NAN = 8;
+    static final byte TAG_STRING = 9;
+    static final byte TAG_SYMBOL = 10;
+    static final byte TAG_SYMBOL_REF = 11;
+    static final byte TAG_BYTEVECTOR = 12;
+    static final byte TAG_LIST = 13;
+    static final byte TAG_DOTTED_LIST = 14;
+    static final byte TAG_VECTOR = 15;
+
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+    private final List<String> symbols = new ArrayList<>();
+    private boolean started;
+
+    private SExpr[] nodes = new SExpr[16];
+    private int[] next = new int[16];
+
+    public SExprEncoder() {
+    }
+
+    /**
+     * Appends {@code expr} to {@code out}, preceded by the stream header on the first call.
+     *
+     * @throws BufferOverflowException if {@code out} has not enough space remaining;
+     *                                 the position of {@code out} and the state of this encoder are then unchanged
+     */
+    public void encode(SExpr expr, ByteBuffer out) {
+        int position = out.position();
+        int symbolCount = symbols.size();
+        boolean wasStarted = started;
+        try {
+            if (!started) {
+                out.put(MAGIC_0).put(MAGIC_1).put(VERSION);
+                started = true;
+            }
+            encodeTree(expr, out);
+        } catch (BufferOverflowException e) {
+            out.position(position);
+            for (int i = symbols.size() - 1; i >= symbolCount; --i)
+                symbolIds.remove(symbols.remove(i));
+            started = wasStarted;
+            throw e;
+        } finally {
+            Arrays.fill(nodes, null);
+        }
+    }
+
+    /**
+     * Encodes {@code expr} as a stream of its own.
+     */
+    public static ByteBuffer encodeToBuffer(SExpr expr) {
+        int capacity = 256;
+        while (true) {
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            try {
+                new SExprEncoder().encode(expr, buffer);
+                return buffer.flip();
+            } catch (BufferOverflowException e) {
+                capacity *= 2;
+            }
+        }
+    }
+
+    private void encodeTree(SExpr root, ByteBuffer out) {
+        int sp = 0;
+        SExpr expr = root;
+        while (true) {
+            if (expr.isList() || expr.isDottedList() || expr.isVector()) {
+                List<SExpr> elems = expr.elements();
+                out.put(expr.isList() ? TAG_LIST : expr.isVector() ? TAG_VECTOR : TAG_DOTTED_LIST);
+                putVarint(out, elems.size());
+                if (sp == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, sp * 2);
+                    next = Arrays.copyOf(next, sp * 2);
+                }
+                nodes[sp] = expr;
+                next[sp] = 0;
+                sp++;
+            } else {
+                encodeAtom(expr, out);
+            }
+            while (true) {
+                if (sp == 0)
+                    return;
+                SExpr parent = nodes[sp - 1];
+                List<SExpr> elems = parent.elements();
+                int i = next[sp - 1];
+                if (i < elems.size()) {
+                    next[sp - 1] = i + 1;
+                    expr = elems.get(i);
+                    break;
+                }
+                if (i == elems.size() && parent.isDottedList()) {
+                    next[sp - 1] = i + 1;
+                    expr = parent.tail();
+                    break;
+                }
+                nodes[--sp] = null;
+            }
+        }
+    }
+
+    private void encodeAtom(SExpr expr, ByteBuffer out) {
+        if (expr.isBoolean()) {
+            out.put(expr.booleanValue() ? TAG_TRUE : TAG_FALSE);
+        } else if (expr.isFixnum()) {
+            out.put(TAG_FIXNUM);
+            putVarint(out, zigzag(expr.longValue()));
+        } else if (expr.isFlonum()) {
+            out.put(TAG_FLONUM);
+            long bits = Double.doubleToRawLongBits(expr.doubleValue());
+            for (int i = 0; i < 8; ++i)
+                out.put((byte) (bits >>> (8 * i)));
+        } else if (expr.isNumber()) {
+            BigDecimal d = expr.getNumberValue().get();
+            byte[] unscaled = d.unscaledValue().toByteArray();
+            out.put(TAG_DECIMAL);
+            putVarint(out, zigzag(d.scale()));
+            putVarint(out, unscaled.length);
+            out.put(unscaled);
+        } else if (expr.isInfinity()) {
+            out.put(expr.doubleValue() < 0 ? TAG_NEGATIVE_INFINITY : TAG_POSITIVE_INFINITY);
+        } else if (expr.isNan()) {
+            out.put(TAG_NAN);
+        } else if (expr.isCharacter()) {
+            out.put(TAG_CHARACTER);
+            putVarint(out, expr.codePoint());
+        } else if (expr.isString()) {
+            out.put(TAG_STRING);
+            putUtf8(out, expr.stringValue());
+        } else if (expr.isSymbol()) {
+            String name = expr.symbolName();
+            Integer id = symbolIds.get(name);
+            if (id != null) {
+                out.put(TAG_SYMBOL_REF);
+                putVarint(out, id);
+            } else {
+                out.put(TAG_SYMBOL);
+                putUtf8(out, name);
+                symbolIds.put(name, symbols.size());
+                symbols.add(name);
+            }
+        } else if (expr.isBytevector()) {
+            byte[] elems = expr.getBytevectorElements().get();
+            out.put(TAG_BYTEVECTOR);
+            putVarint(out, elems.length);
+            if (out.remaining() < elems.length)
+                throw new BufferOverflowException();
+            for (byte b : elems)
+                out.put((byte) (b ^ 0x80));
+        } else {
+            throw new IllegalArgumentException("unknown datum: " + expr.getClass());
+        }
+    }
+
+    static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    static void putVarint(ByteBuffer out, long n) {
+        while ((n & ~0x7fL) != 0) {
+            out.put((byte) ((n & 0x7f) | 0x80));
+            n >>>= 7;
+        }
+        out.put((byte) n);
+    }
+
+    // unpaired surrogates become '?' like String.getBytes
+    private static void putUtf8(ByteBuffer out, String s) {
+        int n = s.length();
+        long length = 0;
+        for (int i = 0; i < n; ++i) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        putVarint(out, length);
+        if (out.remaining() < length)
+            throw new BufferOverflowException();
+        for (int i = 0; i < n; ++i) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xc0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xf0 | (cp >> 18)));
+                out.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                out.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (cp & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xe0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.leque.sexpr.tree;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Receives the events of a datum from {@link SExprReader#read(SExprHandler)}.
+ *
+ * <p>{@link CharSequence} arguments are owned by the caller and only valid during the call.
+ */
+public interface SExprHandler {
+    default void startList() {
+    }
+
+    default void dot() {
+    }
+
+    default void endList() {
+    }
+
+    default void startVector() {
+    }
+
+    default void endVector() {
+    }
+
+    default void startAbbreviation(String name) {
+    }
+
+    default void endAbbreviation() {
+    }
+
+    default void booleanValue(boolean value) {
+    }
+
+    default void character(int codePoint) {
+    }
+
+    default void integer(long value) {
+    }
+
+    default void integer(BigInteger value) {
+    }
+
+    default void flonum(double value) {
+    }
+
+    /**
+     * Receives a flonum which cannot be represented exactly by a {@code double}.
+     */
+    default void flonum(BigDecimal value) {
+    }
+
+    default void infinity(boolean negative) {
+    }
+
+    default void nan() {
+    }
+
+    default void string(CharSequence value) {
+    }
+
+    default void symbol(CharSequence name) {
+    }
+
+    default void bytevector(byte[] elements) {
+    }
+}
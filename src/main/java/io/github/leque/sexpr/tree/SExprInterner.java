@@ -0,0 +1,167 @@
+package io.github.leque.sexpr.tree;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A thread-safe, bounded table of canonical datums, for hash-consing trees with repeated structure.
+ *
+ * <p>Interning a datum returns an identical datum that was interned before if the table still holds one,
+ * so repeated subtrees, strings and numbers are stored once and shared nodes compare by reference.
+ * Atoms only match atoms of the same representation, so {@code 1}, {@code 1.0} and {@code 1.00} stay distinct.
+ * Lists, dotted lists and vectors are interned shallowly: they match nodes of the same kind whose children
+ * are the same objects, so their children must be interned first,
+ * as the factories of this class, {@link #internTree(SExpr)} and the parsers do.
+ *
+ * <p>The table has a fixed number of slots and keeps the most recently interned datum of a slot,
+ * so it never grows, and a datum that was evicted is just interned again as a distinct object.
+ */
+public final class SExprInterner {
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    // pairs of slots, so that two datums with the same index can both stay
+    private final AtomicReferenceArray<SExpr> slots;
+    private final int mask;
+
+    /**
+     * Creates a table of at least {@code capacity} slots.
+     */
+    public SExprInterner(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("non-positive capacity: " + capacity);
+        int n = capacity <= 2 ? 2 : Integer.highestOneBit(Math.min(capacity, MAX_CAPACITY) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(n);
+        this.mask = n - 2;
+    }
+
+    /**
+     * Returns the canonical datum identical to {@code value}, which becomes canonical if there is none.
+     */
+    public SExpr intern(SExpr value) {
+        if (value instanceof SExprs.BooleanValue || value.isInfinity() || value.isNan())
+            return value;
+        int h = value.hashCode() * 0x9e3779b9;
+        int i = (h ^ (h >>> 16)) & mask;
+        SExpr first = slots.getAcquire(i);
+        if (first != null && identical(first, value))
+            return first;
+        SExpr second = slots.getAcquire(i + 1);
+        if (second != null && identical(second, value))
+            return second;
+        // the hit moves to the first slot, and the older datum of the first slot takes the second
+        if (first != null)
+            slots.setRelease(i + 1, first);
+        slots.setRelease(i, value);
+        return value;
+    }
+
+    // unlike equals, which compares numbers by value and children by structure
+    private static boolean identical(SExpr x, SExpr y) {
+        if (x == y)
+            return true;
+        if (x.getClass() != y.getClass())
+            return false;
+        if (x instanceof SExprs.CompoundValue cx && y instanceof SExprs.CompoundValue cy) {
+            List<SExpr> xs = cx.elements;
+            List<SExpr> ys = cy.elements;
+            if (xs.size() != ys.size() || cx.end != cy.end)
+                return false;
+            for (int i = 0; i < xs.size(); ++i) {
+                if (xs.get(i) != ys.get(i))
+                    return false;
+            }
+            return true;
+        }
+        if (x.isFixnum())
+            return x.longValue() == y.longValue();
+        if (x.isFlonum())
+            return Double.doubleToRawLongBits(x.doubleValue()) == Double.doubleToRawLongBits(y.doubleValue());
+        if (x instanceof SExprs.DecimalValue dx && y instanceof SExprs.DecimalValue dy)
+            return dx.toBigDecimal().equals(dy.toBigDecimal());
+        // characters, strings, symbols and bytevectors, whose equals is exact
+        return x.equals(y);
+    }
+
+    /**
+     * Returns the canonical tree equal to {@code root}, interning its nodes bottom-up.
+     */
+    public SExpr internTree(SExpr root) {
+        return SExprWalker.fold(root, new SExprWalker.Folder<SExpr>() {
+            @Override
+            public SExpr atom(SExpr expr) {
+                return intern(expr);
+            }
+
+            @Override
+            public SExpr compound(SExpr expr, List<SExpr> children) {
+                List<SExpr> elems = expr.elements();
+                boolean same = true;
+                for (int i = 0; i < elems.size() && same; ++i)
+                    same = elems.get(i) == children.get(i);
+                if (expr.isDottedList()) {
+                    if (same && expr.tail() == children.get(elems.size()))
+                        return intern(expr);
+                    return intern(SExprs.dottedListView(
+                            List.copyOf(children.subList(0, elems.size())), children.get(elems.size())));
+                }
+                if (same)
+                    return intern(expr);
+                return intern(expr.isVector() ? SExprs.vectorView(List.copyOf(children)) : SExprs.listView(List.copyOf(children)));
+            }
+        });
+    }
+
+    public SExpr characterValue(int codePoint) {
+        return intern(SExprs.characterValue(codePoint));
+    }
+
+    public SExpr numberValue(long repr) {
+        return intern(SExprs.numberValue(repr));
+    }
+
+    public SExpr numberValue(BigInteger i) {
+        return intern(SExprs.numberValue(i));
+    }
+
+    public SExpr numberValue(BigDecimal repr) {
+        return intern(SExprs.numberValue(repr));
+    }
+
+    public SExpr numberValue(String repr) {
+        return intern(SExprs.numberValue(repr));
+    }
+
+    public SExpr flonumValue(double repr) {
+        return intern(SExprs.flonumValue(repr));
+    }
+
+    public SExpr stringValue(String repr) {
+        return intern(SExprs.stringValue(repr));
+    }
+
+    public SExpr symbolValue(String repr) {
+        return intern(SExprs.symbolValue(repr));
+    }
+
+    public SExpr listValue(List<SExpr> repr) {
+        return intern(SExprs.listValue(repr));
+    }
+
+    public SExpr listValue(SExpr... reprs) {
+        return intern(SExprs.listValue(reprs));
+    }
+
+    public SExpr dottedListValue(List<SExpr> elems, SExpr end) {
+        return intern(SExprs.dottedListValue(elems, end));
+    }
+
+    public SExpr vectorValue(List<SExpr> repr) {
+        return intern(SExprs.vectorValue(repr));
+    }
+
+    public SExpr vectorValue(SExpr... reprs) {
+        return intern(SExprs.vectorValue(reprs));
+    }
+}
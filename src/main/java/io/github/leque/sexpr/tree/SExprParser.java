@@ -4,41 +4,555 @@ import io.github.leque.sexpr.antlr.SchemeBaseListener;
 import io.github.leque.sexpr.antlr.SchemeLexer;
 import io.github.leque.sexpr.antlr.SchemeParser;
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.dfa.DFA;
 import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.misc.Utils;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 
 public class SExprParser {
     private SExprParser() {
     }
 
+    public enum Engine {
+        ANTLR,
+        READER,
+    }
+
     public static SExpr parse(String input) {
-        return parse(CharStreams.fromString(input));
+        return parse(input, Engine.ANTLR);
+    }
+
+    public static SExpr parse(String input, Engine engine) {
+        return parse(input, engine, null);
+    }
+
+    /**
+     * Parses {@code input}, interning symbols in {@code symbols} unless it is {@code null}.
+     */
+    public static SExpr parse(String input, Engine engine, SymbolTable symbols) {
+        return parse(input, engine, symbols, null);
+    }
+
+    /**
+     * Parses {@code input}, interning symbols in {@code symbols} and hash-consing datums in {@code interner},
+     * unless they are {@code null}.
+     */
+    public static SExpr parse(String input, Engine engine, SymbolTable symbols, SExprInterner interner) {
+        switch (engine) {
+            case READER:
+                return read(new SExprReader(input), symbols, interner);
+            case ANTLR:
+            default:
+                return parse(CharStreams.fromString(input), symbols, interner);
+        }
+    }
+
+    public static SExpr parse(byte[] input) {
+        return parse(input, Engine.ANTLR);
+    }
+
+    public static SExpr parse(byte[] input, Engine engine) {
+        return parse(ByteBuffer.wrap(input), engine);
+    }
+
+    public static SExpr parse(ByteBuffer input) {
+        return parse(input, Engine.ANTLR);
+    }
+
+    /**
+     * Parses the remaining UTF-8 bytes of {@code input} without copying them into a String.
+     */
+    public static SExpr parse(ByteBuffer input, Engine engine) {
+        return parse(input, engine, null);
+    }
+
+    public static SExpr parse(ByteBuffer input, Engine engine, SymbolTable symbols) {
+        return parse(input, engine, symbols, null);
+    }
+
+    public static SExpr parse(ByteBuffer input, Engine engine, SymbolTable symbols, SExprInterner interner) {
+        switch (engine) {
+            case READER:
+                return read(new SExprReader(input), symbols, interner);
+            case ANTLR:
+            default:
+                return parse(new Utf8CharStream(input), symbols, interner);
+        }
+    }
+
+    public static SExpr parse(Path path) throws IOException {
+        return parse(path, Engine.ANTLR);
+    }
+
+    /**
+     * Parses a UTF-8 file through a memory mapping of it.
+     */
+    public static SExpr parse(Path path, Engine engine) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return parse(buffer, engine);
+        }
+    }
+
+    public static Stream<SExpr> parseAll(Reader input) {
+        return new SExprReader(input).stream();
+    }
+
+    public static Stream<SExpr> parseAll(InputStream input) {
+        return new SExprReader(input).stream();
+    }
+
+    public static Stream<SExpr> parseAll(Path path) throws IOException {
+        return new SExprReader(Files.newInputStream(path)).stream();
+    }
+
+    public static List<SExpr> parseAllParallel(Path path) throws IOException {
+        return parseAllParallel(Files.readAllBytes(path), ForkJoinPool.commonPool(), null);
+    }
+
+    public static List<SExpr> parseAllParallel(byte[] input) {
+        return parseAllParallel(input, ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * Parses all datums of the UTF-8 {@code input} on {@code pool}, returning them in source order.
+     *
+     * <p>The input is split after top-level lists, which are found with a {@link StructuralIndex},
+     * and the pieces are read in parallel.
+     * If a piece cannot be read, the whole input is read again sequentially,
+     * so that errors are reported at the right position.
+     */
+    public static List<SExpr> parseAllParallel(byte[] input, ForkJoinPool pool, SymbolTable symbols) {
+        return parseAllParallel(input, pool, symbols, MIN_CHUNK_SIZE);
+    }
+
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    static List<SExpr> parseAllParallel(byte[] input, ForkJoinPool pool, SymbolTable symbols, int minChunkSize) {
+        int parallelism = pool.getParallelism();
+        int[] bounds = chunkBounds(input, parallelism == 1 ? 1 : Math.min(parallelism * 4, input.length / minChunkSize));
+        if (bounds.length > 2) {
+            try {
+                return pool.invoke(new ReadTask(input, bounds, 0, bounds.length - 1, symbols));
+            } catch (RuntimeException e) {
+                // fall through
+            }
+        }
+        return readAll(input, 0, input.length, symbols);
+    }
+
+    // splits input into about the given number of pieces, just after top-level lists
+    private static int[] chunkBounds(byte[] input, int chunks) {
+        if (chunks <= 1)
+            return new int[]{0, input.length};
+        StructuralIndex index = StructuralIndex.of(input);
+        int[] bounds = new int[chunks + 1];
+        int n = 1;
+        int i = 0;
+        while (i < index.size() && n < chunks) {
+            int close = index.match(i);
+            // leave unbalanced input to the sequential reader, which reports it
+            if (!index.isOpen(i) || close < 0)
+                return new int[]{0, input.length};
+            int end = index.offset(close) + 1;
+            if (end >= (long) input.length * n / chunks && end < input.length)
+                bounds[n++] = end;
+            i = close + 1;
+        }
+        bounds[n++] = input.length;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    private static List<SExpr> readAll(byte[] input, int from, int to, SymbolTable symbols) {
+        SExprReader reader = new SExprReader(ByteBuffer.wrap(input, from, to - from));
+        reader.setSymbolTable(symbols);
+        List<SExpr> result = new ArrayList<>();
+        for (Optional<SExpr> e; (e = reader.read()).isPresent(); )
+            result.add(e.get());
+        return result;
+    }
+
+    private static final class ReadTask extends RecursiveTask<List<SExpr>> {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] input;
+        private final int[] bounds;
+        private final int lo;
+        private final int hi;
+        private final SymbolTable symbols;
+
+        ReadTask(byte[] input, int[] bounds, int lo, int hi, SymbolTable symbols) {
+            this.input = input;
+            this.bounds = bounds;
+            this.lo = lo;
+            this.hi = hi;
+            this.symbols = symbols;
+        }
+
+        @Override
+        protected List<SExpr> compute() {
+            if (hi - lo == 1)
+                return readAll(input, bounds[lo], bounds[hi], symbols);
+            int mid = (lo + hi) >>> 1;
+            ReadTask left = new ReadTask(input, bounds, lo, mid, symbols);
+            left.fork();
+            List<SExpr> right = new ReadTask(input, bounds, mid, hi, symbols).compute();
+            List<SExpr> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+
+    private static SExpr read(SExprReader reader, SymbolTable symbols, SExprInterner interner) {
+        reader.setSymbolTable(symbols);
+        reader.setInterner(interner);
+        return reader.read().orElseThrow(() -> new RuntimeException("unexpected end of input"));
+    }
+
+    private static SExpr parse(CharStream inputStream, SymbolTable symbols, SExprInterner interner) {
+        return new Reusable(DfaCache.shared(), symbols, interner).parse(inputStream);
+    }
+
+    /**
+     * The DFA states and prediction contexts that ANTLR caches across parses to speed up prediction.
+     *
+     * <p>A cache can be shared by parsers in many threads, which then contend for it,
+     * or be confined to the parsers of one thread.
+     * Clearing a cache is safe while it is in use: parses in progress finish with the old states,
+     * and the parsers start over with an empty cache on their next input.
+     */
+    public static final class DfaCache {
+        private static final DfaCache SHARED = new DfaCache();
+
+        private volatile Generation generation = new Generation();
+        private volatile int maximumStateCount = Integer.MAX_VALUE;
+        private final LongAdder clears = new LongAdder();
+
+        public DfaCache() {
+        }
+
+        /**
+         * Returns the cache used by the static {@code parse} methods.
+         */
+        public static DfaCache shared() {
+            return SHARED;
+        }
+
+        public static final class Stats {
+            private final int lexerStateCount;
+            private final int parserStateCount;
+            private final int predictionContextCount;
+            private final long clearCount;
+
+            private Stats(int lexerStateCount, int parserStateCount, int predictionContextCount, long clearCount) {
+                this.lexerStateCount = lexerStateCount;
+                this.parserStateCount = parserStateCount;
+                this.predictionContextCount = predictionContextCount;
+                this.clearCount = clearCount;
+            }
+
+            public int getLexerStateCount() {
+                return lexerStateCount;
+            }
+
+            public int getParserStateCount() {
+                return parserStateCount;
+            }
+
+            public int getPredictionContextCount() {
+                return predictionContextCount;
+            }
+
+            public long getClearCount() {
+                return clearCount;
+            }
+
+            @Override
+            public String toString() {
+                return "Stats{lexerStateCount=" + lexerStateCount + ", parserStateCount=" + parserStateCount
+                        + ", predictionContextCount=" + predictionContextCount + ", clearCount=" + clearCount + "}";
+            }
+        }
+
+        public Stats getStats() {
+            Generation g = generation;
+            return new Stats(stateCount(g.lexerDfa), stateCount(g.parserDfa), contextCount(g.parserContexts), clears.sum());
+        }
+
+        public int getMaximumStateCount() {
+            return maximumStateCount;
+        }
+
+        /**
+         * Makes parsers clear this cache when a parse leaves it with more than {@code maximumStateCount}
+         * lexer and parser DFA states.
+         */
+        public void setMaximumStateCount(int maximumStateCount) {
+            if (maximumStateCount < 0)
+                throw new IllegalArgumentException("negative maximum state count: " + maximumStateCount);
+            this.maximumStateCount = maximumStateCount;
+        }
+
+        public void clear() {
+            generation = new Generation();
+            clears.increment();
+        }
+
+        private void trim() {
+            int max = maximumStateCount;
+            if (max == Integer.MAX_VALUE)
+                return;
+            Generation g = generation;
+            if (stateCount(g.lexerDfa) + stateCount(g.parserDfa) > max && generation == g)
+                clear();
+        }
+
+        private static int stateCount(DFA[] dfas) {
+            int count = 0;
+            for (DFA dfa : dfas) {
+                // the ATN simulators add states under this lock
+                synchronized (dfa.states) {
+                    count += dfa.states.size();
+                }
+            }
+            return count;
+        }
+
+        private static int contextCount(PredictionContextCache contexts) {
+            synchronized (contexts) {
+                return contexts.size();
+            }
+        }
+
+        private static final class Generation {
+            private final DFA[] lexerDfa = newDfa(SchemeLexer._ATN);
+            private final DFA[] parserDfa = newDfa(SchemeParser._ATN);
+            private final PredictionContextCache lexerContexts = new PredictionContextCache();
+            private final PredictionContextCache parserContexts = new PredictionContextCache();
+
+            private static DFA[] newDfa(ATN atn) {
+                DFA[] dfa = new DFA[atn.getNumberOfDecisions()];
+                for (int i = 0; i < dfa.length; ++i)
+                    dfa[i] = new DFA(atn.getDecisionState(i), i);
+                return dfa;
+            }
+        }
+    }
+
+    /**
+     * An ANTLR parser that reuses its lexer, token stream and parser across inputs.
+     *
+     * <p>It is not thread-safe: confine an instance to a thread, for example with a {@link ThreadLocal},
+     * or take it from a pool. Input that nests too deeply for ANTLR is read with {@link SExprReader}.
+     */
+    public static final class Reusable {
+        private final DfaCache cache;
+        private final SymbolTable symbols;
+        private final SExprInterner interner;
+        // the input between parses, so that the last input is not retained
+        private final CharStream empty = CharStreams.fromString("");
+        private final SchemeLexer lexer = new SchemeLexer(empty);
+        private final CommonTokenStream tokens = new CommonTokenStream(lexer);
+        private final SchemeParser parser = new SchemeParser(tokens);
+        private final SyntaxErrorListener syntaxErrorListener = new SyntaxErrorListener();
+        private final ANTLRErrorStrategy errorHandler = parser.getErrorHandler();
+        private final ANTLRErrorStrategy bailErrorHandler = new BailErrorStrategy();
+        private DfaCache.Generation generation;
+
+        public Reusable() {
+            this(DfaCache.shared(), null, null);
+        }
+
+        /**
+         * Creates a parser that caches DFA states in {@code cache},
+         * and interns symbols in {@code symbols} and hash-conses datums in {@code interner} unless they are {@code null}.
+         */
+        public Reusable(DfaCache cache, SymbolTable symbols, SExprInterner interner) {
+            this.cache = Objects.requireNonNull(cache);
+            this.symbols = symbols;
+            this.interner = interner;
+            // characters that start no token, such as a '#' apart from its "u8("
+            lexer.addErrorListener(syntaxErrorListener);
+            parser.addErrorListener(syntaxErrorListener);
+        }
+
+        public DfaCache getDfaCache() {
+            return cache;
+        }
+
+        public SExpr parse(String input) {
+            return parse(CharStreams.fromString(input));
+        }
+
+        /**
+         * Parses the remaining UTF-8 bytes of {@code input} without copying them into a String.
+         */
+        public SExpr parse(ByteBuffer input) {
+            return parse(new Utf8CharStream(input));
+        }
+
+        /**
+         * Parses each of {@code samples}, ignoring syntax errors, so that the DFA cache is ready for similar inputs.
+         */
+        public void warmUp(Iterable<String> samples) {
+            for (String sample : samples) {
+                try {
+                    parse(sample);
+                } catch (RuntimeException e) {
+                    // only the cached states matter
+                }
+            }
+        }
+
+        private SExpr parse(CharStream inputStream) {
+            DfaCache.Generation g = cache.generation;
+            if (g != generation) {
+                lexer.setInterpreter(new LexerATNSimulator(lexer, SchemeLexer._ATN, g.lexerDfa, g.lexerContexts));
+                parser.setInterpreter(new ParserATNSimulator(parser, SchemeParser._ATN, g.parserDfa, g.parserContexts));
+                generation = g;
+            }
+            syntaxErrorListener.getSyntaxErrors().clear();
+            try {
+                lexer.setInputStream(inputStream);
+                tokens.setTokenSource(lexer);
+                tokens.fill();
+                // the generated parser recurses once per nesting level, the reader does not
+                if (nestingDepth(tokens.getTokens()) > MAX_ANTLR_DEPTH)
+                    return read(new SExprReader(inputStream.getText(Interval.of(0, inputStream.size() - 1))), symbols, interner);
+                parser.setTokenStream(tokens);
+                SExprListener sexprListener = parseSexpr();
+                if (syntaxErrorListener.getSyntaxErrors().isEmpty())
+                    return sexprListener.getParsedExpression();
+                else {
+                    throw new RuntimeException(syntaxErrorListener.toString());
+                }
+            } finally {
+                lexer.setInputStream(empty);
+                tokens.setTokenSource(lexer);
+                cache.trim();
+            }
+        }
+
+        // SLL prediction is faster and suffices for valid input, so full LL only reparses input that it rejects,
+        // to decide whether the input is invalid and to report its errors.
+        // the first attempt builds datums as rules exit instead of building a parse tree, so no context outlives its rule.
+        private SExprListener parseSexpr() {
+            SExprListener sexprListener = new SExprListener(symbols, interner);
+            parser.removeParseListeners();
+            parser.setBuildParseTree(false);
+            parser.addParseListener(sexprListener);
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.setErrorHandler(bailErrorHandler);
+            try {
+                parser.sexpr();
+                return sexprListener;
+            } catch (RuntimeException e) {
+                // the listener also sees the rules exited while a bail-out unwinds, and may fail on them,
+                // so any failure is decided by the reparse, whose tree is only walked if it has no syntax errors
+                tokens.seek(0);
+                parser.reset();
+                parser.removeParseListeners();
+                parser.setBuildParseTree(true);
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                parser.setErrorHandler(errorHandler);
+                SchemeParser.SexprContext tree = parser.sexpr();
+                // the recovered tree may hold malformed lists, on which the listener would fail first
+                if (!syntaxErrorListener.getSyntaxErrors().isEmpty())
+                    throw new RuntimeException(syntaxErrorListener.toString());
+                SExprListener retry = new SExprListener(symbols, interner);
+                ParseTreeWalker.DEFAULT.walk(retry, tree);
+                return retry;
+            }
+        }
     }
 
-    private static SExpr parse(CharStream inputStream) {
-        SchemeLexer lexer = new SchemeLexer(inputStream);
-        TokenStream tokens = new CommonTokenStream(lexer);
-        SchemeParser parser = new SchemeParser(tokens);
-        SExprListener sexprListener = new SExprListener();
-        SyntaxErrorListener syntaxErrorListener = new SyntaxErrorListener();
-        parser.addErrorListener(syntaxErrorListener);
-        ParseTreeWalker.DEFAULT.walk(sexprListener, parser.sexpr());
-        if (syntaxErrorListener.getSyntaxErrors().isEmpty())
-            return sexprListener.getParsedExpression();
-        else {
-            throw new RuntimeException(syntaxErrorListener.toString());
+    static final int MAX_ANTLR_DEPTH = 256;
+
+    private static final int T_DATUM_COMMENT = literalTokenType("'#;'");
+    private static final int T_OPEN = literalTokenType("'('");
+    private static final int T_CLOSE = literalTokenType("')'");
+    private static final int T_DOT = literalTokenType("'.'");
+    private static final int T_OPEN_VECTOR = literalTokenType("'#('");
+    private static final int T_QUOTE = literalTokenType("'''");
+    private static final int T_QUASIQUOTE = literalTokenType("'`'");
+    private static final int T_UNQUOTE = literalTokenType("','");
+    private static final int T_UNQUOTE_SPLICING = literalTokenType("',@'");
+
+    private static int literalTokenType(String literal) {
+        Vocabulary vocabulary = SchemeLexer.VOCABULARY;
+        for (int type = 0; type <= vocabulary.getMaxTokenType(); ++type) {
+            if (literal.equals(vocabulary.getLiteralName(type)))
+                return type;
+        }
+        throw new IllegalStateException("no such token: " + literal);
+    }
+
+    // the maximum number of nested lists, vectors, bytevectors, abbreviations and datum comments
+    static int nestingDepth(List<Token> tokens) {
+        int depth = 0;
+        int maxDepth = 0;
+        // the number of prefixes waiting for their datum, and those before each open list
+        int pending = 0;
+        int[] saved = new int[16];
+        int level = 0;
+        for (Token token : tokens) {
+            // trivia
+            if (token.getChannel() != Token.DEFAULT_CHANNEL)
+                continue;
+            int type = token.getType();
+            if (type == T_DATUM_COMMENT || type == T_QUOTE || type == T_QUASIQUOTE
+                    || type == T_UNQUOTE || type == T_UNQUOTE_SPLICING) {
+                pending++;
+                maxDepth = Math.max(maxDepth, ++depth);
+            } else if (type == T_OPEN || type == T_OPEN_VECTOR || type == SchemeLexer.OpenBytevector) {
+                if (level == saved.length)
+                    saved = Arrays.copyOf(saved, level * 2);
+                saved[level++] = pending;
+                pending = 0;
+                maxDepth = Math.max(maxDepth, ++depth);
+            } else if (type == T_CLOSE) {
+                if (level == 0)
+                    break;
+                pending = saved[--level];
+                depth -= 1 + pending;
+                pending = 0;
+            } else if (type == T_DOT || type == Token.EOF) {
+                // not a datum by itself
+            } else {
+                depth -= pending;
+                pending = 0;
+            }
         }
+        return maxDepth;
     }
 
     public static class SyntaxErrorListener extends BaseErrorListener {
@@ -104,11 +618,28 @@ public class SExprParser {
         }
     }
 
+    /**
+     * Builds a datum as the rules of its parse exit.
+     * It can walk a complete parse tree, or listen to a parser with {@link Parser#addParseListener},
+     * which needs no parse tree, as {@link SExprParser} does.
+     */
     public static class SExprListener extends SchemeBaseListener {
         private final ArrayDeque<List<SExpr>> parserStack;
+        private final SymbolTable symbols;
+        private final SExprInterner interner;
 
         public SExprListener() {
+            this(null);
+        }
+
+        public SExprListener(SymbolTable symbols) {
+            this(symbols, null);
+        }
+
+        public SExprListener(SymbolTable symbols, SExprInterner interner) {
             parserStack = new ArrayDeque<>();
+            this.symbols = symbols;
+            this.interner = interner;
             newEnv();
         }
 
@@ -132,6 +663,8 @@ public class SExprParser {
         }
 
         private void pushValue(SExpr value) {
+            if (interner != null)
+                value = interner.intern(value);
             parserStack.getFirst().add(value);
         }
 
@@ -140,6 +673,10 @@ public class SExprParser {
             return xs.remove(xs.size() - 1);
         }
 
+        private SExpr symbolValue(String name) {
+            return symbols == null ? SExprs.symbolValue(name) : symbols.intern(name);
+        }
+
         private String inputText(ParserRuleContext ctx) {
             int a = ctx.start.getStartIndex();
             int b = ctx.stop.getStopIndex();
@@ -215,7 +752,7 @@ public class SExprParser {
             String text = inputText(ctx);
             if (text.startsWith("#"))
                 text = text.substring(2);
-            pushValue(SExprs.numberValue(new BigDecimal(text)));
+            pushValue(SExprs.numberValue(text));
             super.exitFlonum(ctx);
         }
 
@@ -298,14 +835,14 @@ public class SExprParser {
             else if (SExprs.isPositiveInf(text))
                 pushValue(SExprs.positiveInfinityValue());
             else
-                pushValue(SExprs.symbolValue(text));
+                pushValue(symbolValue(text));
             super.exitIdentifier(ctx);
         }
 
         @Override
         public void exitEscapedIdentifier(SchemeParser.EscapedIdentifierContext ctx) {
             String text = inputText(ctx);
-            pushValue(SExprs.symbolValue(interpretEscapeSequences(text.substring(1, text.length() - 1))));
+            pushValue(symbolValue(interpretEscapeSequences(text.substring(1, text.length() - 1))));
             super.exitEscapedIdentifier(ctx);
         }
 
@@ -335,7 +872,8 @@ public class SExprParser {
 
         private void expandAbbr(String sym) {
             SExpr value = popValue();
-            pushValue(SExprs.listValue(SExprs.symbolValue(sym), value));
+            SExpr head = symbols == null ? SExprs.abbreviationSymbolValue(sym) : symbols.intern(sym);
+            pushValue(SExprs.listValue(head, value));
             return;
         }
 
@@ -377,22 +915,14 @@ public class SExprParser {
 
         @Override
         public void exitList(SchemeParser.ListContext ctx) {
-            pushValue(SExprs.listValue(popEnv()));
-            super.exitList(ctx);
-        }
-
-        @Override
-        public void enterDottedList(SchemeParser.DottedListContext ctx) {
-            super.enterDottedList(ctx);
-            newEnv();
-        }
-
-        @Override
-        public void exitDottedList(SchemeParser.DottedListContext ctx) {
             List<SExpr> elems = popEnv();
-            SExpr end = elems.remove(elems.size() - 1);
-            pushValue(SExprs.dottedListValue(elems, end));
-            super.exitDottedList(ctx);
+            if (ctx.dot == null) {
+                pushValue(SExprs.listValue(elems));
+            } else {
+                SExpr end = elems.remove(elems.size() - 1);
+                pushValue(SExprs.dottedListValue(elems, end));
+            }
+            super.exitList(ctx);
         }
 
         @Override
@@ -0,0 +1,446 @@
+package io.github.leque.sexpr.tree;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes S-expressions across lines that fit in a given width, using Oppen's pretty printing algorithm.
+ *
+ * <p>Output is streamed to an {@link Appendable} as soon as the layout of a line is decided.
+ * The printer looks ahead at most about one line width of tokens, so it runs in linear time
+ * and its memory does not grow with the size of the datum.
+ *
+ * <p>Lists headed by a symbol with a body rule, such as {@code define}, keep the given number of
+ * arguments on the first line and indent the rest of the elements by two columns.
+ * Other lists headed by a symbol align their arguments with the first one,
+ * and the remaining lists and vectors are filled.
+ * Instances are not thread-safe.
+ */
+public final class SExprPrettyPrinter {
+    private static final int INDENT = 2;
+
+    // token kinds
+    private static final int STRING = 0;
+    private static final int BREAK = 1;
+    private static final int BEGIN = 2;
+    private static final int END = 3;
+
+    private static final long SIZE_INFINITY = Long.MAX_VALUE / 4;
+
+    // print stack modes
+    private static final int FITS = 0;
+    private static final int CONSISTENT = 1;
+    private static final int INCONSISTENT = 2;
+
+    // traversal frame kinds
+    private static final int F_SEQUENCE = 0;
+    private static final int F_ABBREVIATION = 1;
+
+    private final int width;
+    private final Map<String, Integer> bodyRules = new HashMap<>();
+    private final SExprWriter writer = new SExprWriter();
+
+    // token ring buffer, indexed by sequence number & mask
+    private int mask;
+    private int[] kinds;
+    private String[] texts;
+    private int[] offsets;
+    private boolean[] consistents;
+    private long[] sizes;
+    private long first;
+    private long last;
+    private long leftTotal;
+    private long rightTotal;
+
+    // sequence numbers of the tokens whose sizes are not known yet
+    private long[] scanStack;
+    private int scanHead;
+    private int scanCount;
+
+    private int[] printModes = new int[16];
+    private int[] printSpaces = new int[16];
+    private int printDepth;
+
+    private Appendable out;
+    private int space;
+
+    private SExpr[] nodes = new SExpr[16];
+    private int[] frameKinds = new int[16];
+    private int[] nextIndices = new int[16];
+    private int[] plainCounts = new int[16];
+
+    public SExprPrettyPrinter(int width) {
+        if (width <= 0)
+            throw new IllegalArgumentException("width must be positive: " + width);
+        this.width = width;
+        for (String head : new String[]{
+                "lambda", "define", "define-syntax", "define-values", "let-syntax", "letrec-syntax", "syntax-rules",
+                "let", "let*", "letrec", "letrec*", "let-values", "let*-values", "parameterize",
+                "when", "unless", "case", "case-lambda", "guard", "with-exception-handler"})
+            bodyRules.put(head, 1);
+        bodyRules.put("do", 2);
+        bodyRules.put("define-record-type", 2);
+        bodyRules.put("begin", 0);
+        bodyRules.put("cond", 0);
+        int capacity = Integer.highestOneBit(Math.max(width, 16) * 4 - 1) << 1;
+        allocateBuffer(capacity);
+        scanStack = new long[capacity];
+    }
+
+    /**
+     * Sets the body rule for lists headed by {@code head}:
+     * the first {@code distinguished} arguments stay on the line of {@code head},
+     * and the other elements are indented by two columns when the list does not fit.
+     *
+     * @return this printer
+     */
+    public SExprPrettyPrinter indentBody(String head, int distinguished) {
+        if (distinguished < 0)
+            throw new IllegalArgumentException("distinguished must not be negative: " + distinguished);
+        bodyRules.put(head, distinguished);
+        return this;
+    }
+
+    public String toPrettyString(SExpr expr) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            print(expr, builder);
+        } catch (IOException e) {
+            throw new IllegalStateException("must not happen", e);
+        }
+        return builder.toString();
+    }
+
+    public void print(SExpr expr, Appendable out) throws IOException {
+        this.out = out;
+        this.space = width;
+        first = last = 0;
+        leftTotal = rightTotal = 1;
+        scanHead = scanCount = 0;
+        printDepth = 0;
+        try {
+            emit(expr);
+            if (scanCount > 0) {
+                checkStack(0);
+                advanceLeft();
+            }
+        } finally {
+            this.out = null;
+            Arrays.fill(texts, null);
+            Arrays.fill(nodes, null);
+        }
+    }
+
+    // traverses expr with an explicit stack and feeds tokens to the scanner
+    private void emit(SExpr root) throws IOException {
+        int sp = 0;
+        SExpr expr = root;
+        while (true) {
+            String abbr = SExprWriter.abbreviationOf(expr);
+            if (abbr != null) {
+                scanString(abbr);
+                sp = pushFrame(sp, expr, F_ABBREVIATION, 0);
+            } else if (expr.isList() || expr.isDottedList() || expr.isVector()) {
+                List<SExpr> elems = expr.elements();
+                SExpr head = elems.isEmpty() ? null : elems.get(0);
+                if (expr.isVector() || head == null || !head.isSymbol()) {
+                    scanBegin(expr.isVector() ? 2 : 1, false);
+                    sp = pushFrame(sp, expr, F_SEQUENCE, 0);
+                } else {
+                    Integer rule = bodyRules.get(head.symbolName());
+                    if (rule != null) {
+                        scanBegin(INDENT, true);
+                        sp = pushFrame(sp, expr, F_SEQUENCE, rule);
+                    } else {
+                        scanBegin((int) writer.writtenLength(head) + 2, true);
+                        sp = pushFrame(sp, expr, F_SEQUENCE, 1);
+                    }
+                }
+                scanString(expr.isVector() ? "#(" : "(");
+            } else if (expr.isBytevector()) {
+                scanBegin(4, false);
+                scanString("#u8(");
+                for (int i = 0, n = expr.bytevectorLength(); i < n; ++i) {
+                    if (i > 0)
+                        scanBreak(1, 0);
+                    scanString(Integer.toString(expr.bytevectorRef(i)));
+                }
+                scanString(")");
+                scanEnd();
+            } else {
+                scanString(writer.writeToString(expr));
+            }
+            while (true) {
+                if (sp == 0)
+                    return;
+                SExpr parent = nodes[sp - 1];
+                List<SExpr> elems = parent.elements();
+                int i = nextIndices[sp - 1];
+                if (frameKinds[sp - 1] == F_ABBREVIATION) {
+                    if (i == 0) {
+                        nextIndices[sp - 1] = 1;
+                        expr = elems.get(1);
+                        break;
+                    }
+                } else if (i < elems.size()) {
+                    if (i > 0) {
+                        if (i <= plainCounts[sp - 1])
+                            scanString(" ");
+                        else
+                            scanBreak(1, 0);
+                    }
+                    nextIndices[sp - 1] = i + 1;
+                    expr = elems.get(i);
+                    break;
+                } else if (i == elems.size() && parent.isDottedList()) {
+                    scanBreak(1, 0);
+                    scanString(". ");
+                    nextIndices[sp - 1] = i + 1;
+                    expr = parent.tail();
+                    break;
+                } else {
+                    scanString(")");
+                    scanEnd();
+                }
+                nodes[--sp] = null;
+            }
+        }
+    }
+
+    private int pushFrame(int sp, SExpr expr, int kind, int plain) {
+        if (sp == nodes.length) {
+            nodes = Arrays.copyOf(nodes, sp * 2);
+            frameKinds = Arrays.copyOf(frameKinds, sp * 2);
+            nextIndices = Arrays.copyOf(nextIndices, sp * 2);
+            plainCounts = Arrays.copyOf(plainCounts, sp * 2);
+        }
+        nodes[sp] = expr;
+        frameKinds[sp] = kind;
+        nextIndices[sp] = 0;
+        plainCounts[sp] = plain;
+        return sp + 1;
+    }
+
+    // scanner
+
+    private void scanBegin(int offset, boolean consistent) throws IOException {
+        if (scanCount == 0) {
+            leftTotal = rightTotal = 1;
+            first = last = 0;
+        }
+        long seq = pushToken(BEGIN, null, offset, consistent, -rightTotal);
+        scanPushBack(seq);
+    }
+
+    private void scanEnd() throws IOException {
+        if (scanCount == 0) {
+            printEnd();
+        } else {
+            long seq = pushToken(END, null, 0, false, -1);
+            scanPushBack(seq);
+        }
+    }
+
+    private void scanBreak(int blank, int offset) throws IOException {
+        if (scanCount == 0) {
+            leftTotal = rightTotal = 1;
+            first = last = 0;
+        } else {
+            checkStack(0);
+        }
+        long seq = pushToken(BREAK, null, offset, false, -rightTotal);
+        scanPushBack(seq);
+        rightTotal += blank;
+    }
+
+    private void scanString(String s) throws IOException {
+        if (scanCount == 0) {
+            printString(s);
+        } else {
+            pushToken(STRING, s, 0, false, s.length());
+            rightTotal += s.length();
+            checkStream();
+        }
+    }
+
+    // prints tokens from the left while the pending text cannot fit in the line
+    private void checkStream() throws IOException {
+        while (rightTotal - leftTotal > space) {
+            if (scanCount > 0 && scanStack[scanHead] == first) {
+                scanPopFront();
+                sizes[slot(first)] = SIZE_INFINITY;
+            }
+            advanceLeft();
+            if (first == last)
+                break;
+        }
+    }
+
+    private void advanceLeft() throws IOException {
+        while (first < last && sizes[slot(first)] >= 0) {
+            int s = slot(first);
+            long size = sizes[s];
+            first++;
+            switch (kinds[s]) {
+                case STRING:
+                    leftTotal += texts[s].length();
+                    printString(texts[s]);
+                    texts[s] = null;
+                    break;
+                case BREAK:
+                    leftTotal += 1;
+                    printBreak(offsets[s], size);
+                    break;
+                case BEGIN:
+                    printBegin(offsets[s], consistents[s], size);
+                    break;
+                default:
+                    printEnd();
+                    break;
+            }
+        }
+    }
+
+    // resolves the sizes of the begins, ends and breaks that closed before the current break
+    private void checkStack(int depth) {
+        while (scanCount > 0) {
+            long seq = scanBack();
+            int s = slot(seq);
+            switch (kinds[s]) {
+                case BEGIN:
+                    if (depth == 0)
+                        return;
+                    scanPopBack();
+                    sizes[s] += rightTotal;
+                    depth--;
+                    break;
+                case END:
+                    scanPopBack();
+                    sizes[s] = 1;
+                    depth++;
+                    break;
+                default:
+                    scanPopBack();
+                    sizes[s] += rightTotal;
+                    if (depth == 0)
+                        return;
+                    break;
+            }
+        }
+    }
+
+    // printer
+
+    private void printBegin(int offset, boolean consistent, long size) {
+        if (printDepth == printModes.length) {
+            printModes = Arrays.copyOf(printModes, printDepth * 2);
+            printSpaces = Arrays.copyOf(printSpaces, printDepth * 2);
+        }
+        if (size > space) {
+            printModes[printDepth] = consistent ? CONSISTENT : INCONSISTENT;
+            printSpaces[printDepth] = space - offset;
+        } else {
+            printModes[printDepth] = FITS;
+            printSpaces[printDepth] = 0;
+        }
+        printDepth++;
+    }
+
+    private void printEnd() {
+        printDepth--;
+    }
+
+    private void printBreak(int offset, long size) throws IOException {
+        int mode = printDepth == 0 ? FITS : printModes[printDepth - 1];
+        if (mode == CONSISTENT || (mode == INCONSISTENT && size > space)) {
+            space = printSpaces[printDepth - 1] - offset;
+            out.append('\n');
+            for (int i = Math.max(0, width - space); i > 0; --i)
+                out.append(' ');
+        } else {
+            space -= 1;
+            out.append(' ');
+        }
+    }
+
+    private void printString(String s) throws IOException {
+        space -= s.length();
+        out.append(s);
+    }
+
+    // ring buffer
+
+    private int slot(long seq) {
+        return (int) seq & mask;
+    }
+
+    private long pushToken(int kind, String text, int offset, boolean consistent, long size) {
+        if (last - first == kinds.length)
+            growBuffer();
+        int s = slot(last);
+        kinds[s] = kind;
+        texts[s] = text;
+        offsets[s] = offset;
+        consistents[s] = consistent;
+        sizes[s] = size;
+        return last++;
+    }
+
+    private void allocateBuffer(int capacity) {
+        mask = capacity - 1;
+        kinds = new int[capacity];
+        texts = new String[capacity];
+        offsets = new int[capacity];
+        consistents = new boolean[capacity];
+        sizes = new long[capacity];
+    }
+
+    private void growBuffer() {
+        int[] oldKinds = kinds;
+        String[] oldTexts = texts;
+        int[] oldOffsets = offsets;
+        boolean[] oldConsistents = consistents;
+        long[] oldSizes = sizes;
+        int oldMask = mask;
+        allocateBuffer(oldKinds.length * 2);
+        for (long seq = first; seq < last; ++seq) {
+            int from = (int) seq & oldMask;
+            int to = slot(seq);
+            kinds[to] = oldKinds[from];
+            texts[to] = oldTexts[from];
+            offsets[to] = oldOffsets[from];
+            consistents[to] = oldConsistents[from];
+            sizes[to] = oldSizes[from];
+        }
+    }
+
+    // scan stack, a deque of sequence numbers
+
+    private void scanPushBack(long seq) {
+        if (scanCount == scanStack.length) {
+            long[] stack = new long[scanCount * 2];
+            for (int i = 0; i < scanCount; ++i)
+                stack[i] = scanStack[(scanHead + i) % scanCount];
+            scanStack = stack;
+            scanHead = 0;
+        }
+        scanStack[(scanHead + scanCount) % scanStack.length] = seq;
+        scanCount++;
+    }
+
+    private long scanBack() {
+        return scanStack[(scanHead + scanCount - 1) % scanStack.length];
+    }
+
+    private void scanPopBack() {
+        scanCount--;
+    }
+
+    private void scanPopFront() {
+        scanHead = (scanHead + 1) % scanStack.length;
+        scanCount--;
+    }
+}
@@ -0,0 +1,1343 @@
+package io.github.leque.sexpr.tree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A single-pass reader for the datum language of {@code Scheme.g4}.
+ *
+ * <p>The reader is a pull parser: {@link #nextEvent()} returns one {@link Event} at a time
+ * and the accessors describe the current event.
+ * {@link #read(SExprHandler)} pushes the events of a datum to a handler instead,
+ * and {@link #read()} builds the datum as an {@link SExpr} with {@link SExprBuilder}.
+ *
+ * <p>When reading from a {@link Reader}, only a small window of the input is buffered,
+ * so a sequence of top-level datums can be processed one by one in bounded memory.
+ */
+public class SExprReader implements Closeable {
+    public enum Event {
+        START_LIST,
+        DOT,
+        END_LIST,
+        START_VECTOR,
+        END_VECTOR,
+        START_ABBREVIATION,
+        END_ABBREVIATION,
+        BOOLEAN,
+        CHARACTER,
+        INTEGER,
+        FLONUM,
+        INFINITY,
+        NAN,
+        STRING,
+        SYMBOL,
+        BYTEVECTOR,
+        END_OF_INPUT,
+    }
+
+    private static final int EOF = -1;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int T_EOF = 0;
+    private static final int T_OPEN = 1;
+    private static final int T_OPEN_VECTOR = 2;
+    private static final int T_OPEN_BYTEVECTOR = 3;
+    private static final int T_CLOSE = 4;
+    private static final int T_DOT = 5;
+    private static final int T_QUOTE = 6;
+    private static final int T_QUASIQUOTE = 7;
+    private static final int T_UNQUOTE = 8;
+    private static final int T_UNQUOTE_SPLICING = 9;
+    private static final int T_DATUM_COMMENT = 10;
+    private static final int T_BOOLEAN = 11;
+    private static final int T_CHARACTER = 12;
+    private static final int T_INTEGER = 13;
+    private static final int T_FLONUM = 14;
+    private static final int T_INFINITY = 15;
+    private static final int T_NAN = 16;
+    private static final int T_STRING = 17;
+    private static final int T_SYMBOL = 18;
+
+    private static final int F_LIST = 0;
+    private static final int F_VECTOR = 1;
+    private static final int F_BYTEVECTOR = 2;
+    private static final int F_ABBREVIATION = 3;
+    private static final int F_DATUM_COMMENT = 4;
+
+    private static final String[] CHARACTER_NAMES = {
+            "alarm", "backspace", "delete", "escape", "newline", "null", "return", "space", "tab",
+    };
+
+    private static final int[] CHARACTER_NAME_VALUES = {
+            0x0007, 0x0008, 0x007f, 0x001b, 0x000a, 0x0000, 0x000d, 0x0020, 0x0009,
+    };
+
+    // number of digits that always fit in a long, indexed by radix
+    private static final int[] SAFE_LONG_DIGITS = new int[17];
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    static {
+        for (int radix = 2; radix <= 16; ++radix) {
+            SAFE_LONG_DIGITS[radix] = (int) Math.floor(63 * Math.log(2) / Math.log(radix));
+        }
+    }
+
+    // input
+    private final Reader in;
+    private char[] buf;
+    private int limit;
+    private int pos;
+    private boolean eof;
+    private int lineBase = 1;
+    private int columnBase = 0;
+    private int tokenStart;
+    // the location of the current token once fill has dropped its start
+    private int tokenLine;
+    private int tokenColumn;
+    // whether the char before buf[0] was a CR counted as a line end, so that an LF in buf[0] ends no line
+    private boolean crBeforeBuf;
+    // the number of chars dropped from the front of buf
+    private long discarded;
+    private long bytevectorStart;
+
+    // current token
+    private boolean booleanValue;
+    private int codePoint;
+    private long longValue;
+    private BigInteger bigIntegerValue;
+    private double doubleValue;
+    private BigDecimal flonumValue;
+    private final StringBuilder text = new StringBuilder();
+    private byte[] bytevectorValue;
+    private String abbreviation;
+
+    // parser state
+    private int[] kinds = new int[16];
+    private int[] counts = new int[16];
+    private int[] marks = new int[16];
+    private int depth;
+    private int comments;
+    private boolean completed;
+    private byte[] bytes = new byte[64];
+    private int byteCount;
+    private Event event;
+
+    private SymbolTable symbols;
+    private SExprInterner interner;
+    private SExprBuilder builder;
+
+    public SExprReader(CharSequence input) {
+        this.in = null;
+        this.buf = input.toString().toCharArray();
+        this.limit = buf.length;
+        this.pos = 0;
+        this.eof = true;
+    }
+
+    public SExprReader(Reader in) {
+        this.in = in;
+        this.buf = new char[BUFFER_SIZE];
+        this.limit = 0;
+        this.pos = 0;
+        this.eof = false;
+    }
+
+    public SExprReader(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a reader that decodes the remaining UTF-8 bytes of {@code input} as it reads.
+     * The buffer is shared, not copied, and its position is not changed.
+     */
+    public SExprReader(ByteBuffer input) {
+        this(new ByteBufferInputStream(input.duplicate()));
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Makes {@link #read()} intern symbols in {@code symbols}, or stop interning if it is {@code null}.
+     */
+    public void setSymbolTable(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.builder = null;
+    }
+
+    /**
+     * Makes {@link #read()} hash-cons datums in {@code interner}, or stop hash-consing if it is {@code null}.
+     */
+    public void setInterner(SExprInterner interner) {
+        this.interner = interner;
+        this.builder = null;
+    }
+
+    /**
+     * Reads the next datum.
+     *
+     * @return the datum, or {@link Optional#empty()} if the input has no more datum
+     */
+    public Optional<SExpr> read() {
+        if (builder == null)
+            builder = new SExprBuilder(symbols, interner);
+        if (!read(builder))
+            return Optional.empty();
+        return Optional.of(builder.getResult());
+    }
+
+    /**
+     * Reads the next datum and reports its events to {@code handler}.
+     *
+     * @return {@code false} if the input has no more datum
+     */
+    public boolean read(SExprHandler handler) {
+        if (depth != 0)
+            throw new IllegalStateException("not at top level: depth=" + depth);
+        while (true) {
+            Event e = nextEvent();
+            if (e == Event.END_OF_INPUT)
+                return false;
+            report(handler);
+            if (depth == 0)
+                return true;
+        }
+    }
+
+    /**
+     * Reports the current event to {@code handler}.
+     */
+    public void report(SExprHandler handler) {
+        switch (event) {
+            case START_LIST:
+                handler.startList();
+                break;
+            case DOT:
+                handler.dot();
+                break;
+            case END_LIST:
+                handler.endList();
+                break;
+            case START_VECTOR:
+                handler.startVector();
+                break;
+            case END_VECTOR:
+                handler.endVector();
+                break;
+            case START_ABBREVIATION:
+                handler.startAbbreviation(abbreviation);
+                break;
+            case END_ABBREVIATION:
+                handler.endAbbreviation();
+                break;
+            case BOOLEAN:
+                handler.booleanValue(booleanValue);
+                break;
+            case CHARACTER:
+                handler.character(codePoint);
+                break;
+            case INTEGER:
+                if (bigIntegerValue == null)
+                    handler.integer(longValue);
+                else
+                    handler.integer(bigIntegerValue);
+                break;
+            case FLONUM:
+                if (flonumValue == null)
+                    handler.flonum(doubleValue);
+                else
+                    handler.flonum(flonumValue);
+                break;
+            case INFINITY:
+                handler.infinity(booleanValue);
+                break;
+            case NAN:
+                handler.nan();
+                break;
+            case STRING:
+                handler.string(text);
+                break;
+            case SYMBOL:
+                handler.symbol(text);
+                break;
+            case BYTEVECTOR:
+                handler.bytevector(bytevectorValue);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Skips the datum started by the current event, if it is the start of a list, a vector or an abbreviation,
+     * so that the current event becomes its end.
+     * The skipped text is only checked for balanced parentheses.
+     *
+     * @return the current event after skipping
+     */
+    public Event skip() {
+        int abbreviations = 0;
+        while (event == Event.START_ABBREVIATION) {
+            nextEvent();
+            abbreviations++;
+        }
+        if (event == Event.START_LIST || event == Event.START_VECTOR)
+            skipRest();
+        while (abbreviations-- > 0)
+            nextEvent();
+        return event;
+    }
+
+    /**
+     * Skips the rest of the innermost list or vector, so that the current event becomes its end.
+     * The skipped text is only checked for balanced parentheses,
+     * while strings, escaped symbols, characters and comments are still recognized.
+     *
+     * @return the current event after skipping
+     * @throws IllegalStateException if the innermost datum being read is not a list or a vector
+     */
+    public Event skipRest() {
+        int top = depth - 1;
+        if (top < 0 || (kinds[top] != F_LIST && kinds[top] != F_VECTOR))
+            throw new IllegalStateException("not in a list or vector");
+        int nesting = 1;
+        while (nesting > 0) {
+            if (pos == limit && !fill(1)) {
+                tokenStart = pos;
+                throw error("unexpected end of input");
+            }
+            char c = buf[pos];
+            switch (c) {
+                case '(':
+                    nesting++;
+                    pos++;
+                    break;
+                case ')':
+                    nesting--;
+                    pos++;
+                    break;
+                case '"':
+                case '|':
+                    tokenStart = pos;
+                    skipQuoted(c);
+                    break;
+                case ';': {
+                    int d;
+                    while ((d = peek(0)) != EOF && d != '\n' && d != '\r')
+                        pos++;
+                    break;
+                }
+                case '#':
+                    if (peek(1) == '|') {
+                        skipBlockComment();
+                    } else if (peek(1) == '\\') {
+                        // the character after #\ may be a delimiter, as in #\(
+                        pos += peek(2) == EOF ? 2 : 3;
+                    } else if (peek(1) == ';') {
+                        pos += 2;
+                    } else {
+                        pos++;
+                    }
+                    break;
+                default:
+                    pos++;
+                    break;
+            }
+        }
+        depth--;
+        completed = true;
+        return event = kinds[top] == F_LIST ? Event.END_LIST : Event.END_VECTOR;
+    }
+
+    private void skipQuoted(char quote) {
+        pos++;
+        while (true) {
+            int c = peek(0);
+            if (c == EOF)
+                throw error(quote == '"' ? "unterminated string" : "unterminated symbol");
+            pos++;
+            if (c == quote)
+                return;
+            if (c == '\\' && peek(0) != EOF)
+                pos++;
+        }
+    }
+
+    /**
+     * Reads the next event.
+     * Datum comments are skipped, and the end of an abbreviation is reported
+     * after the abbreviated datum as {@link Event#END_ABBREVIATION}.
+     */
+    public Event nextEvent() {
+        while (true) {
+            if (completed) {
+                completed = false;
+                if (depth > 0) {
+                    int top = depth - 1;
+                    switch (kinds[top]) {
+                        case F_ABBREVIATION:
+                            depth--;
+                            completed = true;
+                            if (comments == 0)
+                                return event = Event.END_ABBREVIATION;
+                            continue;
+                        case F_DATUM_COMMENT:
+                            depth--;
+                            comments--;
+                            break;
+                        case F_LIST:
+                            if (marks[top] == 1)
+                                marks[top] = 2;
+                            else if (marks[top] == 2)
+                                throw error("expected ')'");
+                            else
+                                counts[top]++;
+                            break;
+                        default:
+                            counts[top]++;
+                            break;
+                    }
+                }
+            }
+            int token = scan();
+            int top = depth - 1;
+            int kind = depth > 0 ? kinds[top] : -1;
+            if (kind == F_BYTEVECTOR
+                    && token != T_INTEGER && token != T_CLOSE && token != T_DATUM_COMMENT && token != T_EOF) {
+                throw error("bytevector element must be an integer");
+            }
+            Event e;
+            switch (token) {
+                case T_EOF:
+                    if (depth == 0)
+                        return event = Event.END_OF_INPUT;
+                    throw error("unexpected end of input");
+                case T_OPEN:
+                    push(F_LIST);
+                    e = Event.START_LIST;
+                    break;
+                case T_OPEN_VECTOR:
+                    push(F_VECTOR);
+                    e = Event.START_VECTOR;
+                    break;
+                case T_OPEN_BYTEVECTOR:
+                    push(F_BYTEVECTOR);
+                    marks[depth - 1] = byteCount;
+                    bytevectorStart = discarded + tokenStart;
+                    continue;
+                case T_QUOTE:
+                    e = startAbbreviation(SExprs.QUOTE_NAME);
+                    break;
+                case T_QUASIQUOTE:
+                    e = startAbbreviation(SExprs.QUASIQUOTE_NAME);
+                    break;
+                case T_UNQUOTE:
+                    e = startAbbreviation(SExprs.UNQUOTE_NAME);
+                    break;
+                case T_UNQUOTE_SPLICING:
+                    e = startAbbreviation(SExprs.UNQUOTE_SPLICING_NAME);
+                    break;
+                case T_DATUM_COMMENT:
+                    push(F_DATUM_COMMENT);
+                    comments++;
+                    continue;
+                case T_DOT:
+                    if (kind != F_LIST || counts[top] == 0 || marks[top] != 0)
+                        throw error("unexpected '.'");
+                    marks[top] = 1;
+                    e = Event.DOT;
+                    break;
+                case T_CLOSE:
+                    if (kind != F_LIST && kind != F_VECTOR && kind != F_BYTEVECTOR)
+                        throw error("unexpected ')'");
+                    if (kind == F_LIST && marks[top] == 1)
+                        throw error("missing datum after '.'");
+                    depth--;
+                    completed = true;
+                    if (kind == F_LIST) {
+                        e = Event.END_LIST;
+                    } else if (kind == F_VECTOR) {
+                        e = Event.END_VECTOR;
+                    } else {
+                        if (comments == 0)
+                            bytevectorValue = Arrays.copyOfRange(bytes, marks[top], byteCount);
+                        byteCount = marks[top];
+                        e = Event.BYTEVECTOR;
+                    }
+                    break;
+                case T_INTEGER:
+                    if (kind == F_BYTEVECTOR) {
+                        addByte();
+                        continue;
+                    }
+                    completed = true;
+                    e = Event.INTEGER;
+                    break;
+                case T_BOOLEAN:
+                    completed = true;
+                    e = Event.BOOLEAN;
+                    break;
+                case T_CHARACTER:
+                    completed = true;
+                    e = Event.CHARACTER;
+                    break;
+                case T_FLONUM:
+                    completed = true;
+                    e = Event.FLONUM;
+                    break;
+                case T_INFINITY:
+                    completed = true;
+                    e = Event.INFINITY;
+                    break;
+                case T_NAN:
+                    completed = true;
+                    e = Event.NAN;
+                    break;
+                case T_STRING:
+                    completed = true;
+                    e = Event.STRING;
+                    break;
+                case T_SYMBOL:
+                    completed = true;
+                    e = Event.SYMBOL;
+                    break;
+                default:
+                    throw new IllegalStateException("unknown token: " + token);
+            }
+            if (comments == 0)
+                return event = e;
+        }
+    }
+
+    /**
+     * Returns the last event returned by {@link #nextEvent()}.
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Returns the nesting depth of lists, vectors and abbreviations at the current event.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the offset in chars from the start of the input to the first char of the current event's token,
+     * or of the opening {@code #u8(} for a bytevector.
+     */
+    public long getStartOffset() {
+        return event == Event.BYTEVECTOR ? bytevectorStart : discarded + tokenStart;
+    }
+
+    /**
+     * Returns the offset in chars from the start of the input to the char after the current event's token.
+     */
+    public long getEndOffset() {
+        return discarded + pos;
+    }
+
+    public boolean getBooleanValue() {
+        return booleanValue;
+    }
+
+    public int getCharacterCodePoint() {
+        return codePoint;
+    }
+
+    /**
+     * Returns {@code true} if the current integer fits in a {@code long}.
+     */
+    public boolean isLongValue() {
+        return bigIntegerValue == null;
+    }
+
+    public long getLongValue() {
+        return longValue;
+    }
+
+    public BigInteger getIntegerValue() {
+        return bigIntegerValue != null ? bigIntegerValue : BigInteger.valueOf(longValue);
+    }
+
+    /**
+     * Returns {@code true} if the current flonum is represented exactly by a {@code double}.
+     */
+    public boolean isDoubleValue() {
+        return flonumValue == null;
+    }
+
+    public double getDoubleValue() {
+        return flonumValue != null ? flonumValue.doubleValue() : doubleValue;
+    }
+
+    public BigDecimal getFlonumValue() {
+        return flonumValue != null ? flonumValue : BigDecimal.valueOf(doubleValue);
+    }
+
+    public boolean isNegativeInfinity() {
+        return booleanValue;
+    }
+
+    /**
+     * Returns the contents of the current string or symbol.
+     * The returned sequence is only valid until the next call of {@link #nextEvent()}.
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    public byte[] getBytevectorElements() {
+        return bytevectorValue;
+    }
+
+    public String getAbbreviation() {
+        return abbreviation;
+    }
+
+    /**
+     * Returns an iterator over the remaining datums.
+     * {@link IOException}s are rethrown as {@link UncheckedIOException}.
+     */
+    public Iterator<SExpr> iterator() {
+        return new Iterator<SExpr>() {
+            private SExpr next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null)
+                    next = read().orElse(null);
+                return next != null;
+            }
+
+            @Override
+            public SExpr next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                SExpr result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Returns a sequential stream of the remaining datums.
+     * Closing the stream closes this reader.
+     */
+    public Stream<SExpr> stream() {
+        Spliterator<SExpr> spliterator = Spliterators.spliteratorUnknownSize(
+                iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null)
+            in.close();
+    }
+
+    private void push(int kind) {
+        if (depth == kinds.length) {
+            kinds = Arrays.copyOf(kinds, depth * 2);
+            counts = Arrays.copyOf(counts, depth * 2);
+            marks = Arrays.copyOf(marks, depth * 2);
+        }
+        kinds[depth] = kind;
+        counts[depth] = 0;
+        marks[depth] = 0;
+        depth++;
+    }
+
+    private Event startAbbreviation(String name) {
+        push(F_ABBREVIATION);
+        abbreviation = name;
+        return Event.START_ABBREVIATION;
+    }
+
+    private void addByte() {
+        if (bigIntegerValue != null || longValue < 0 || longValue > 255)
+            throw new ArithmeticException("value not fit in byte: " + getIntegerValue());
+        if (byteCount == bytes.length)
+            bytes = Arrays.copyOf(bytes, byteCount * 2);
+        bytes[byteCount++] = (byte) (longValue + Byte.MIN_VALUE);
+    }
+
+    // lexer
+
+    private int peek(int offset) {
+        int i = pos + offset;
+        if (i < limit)
+            return buf[i];
+        if (!fill(offset + 1))
+            return EOF;
+        return buf[pos + offset];
+    }
+
+    // makes at least n characters from pos available in buf
+    private boolean fill(int n) {
+        if (eof)
+            return false;
+        if (pos > 0) {
+            if (tokenStart >= 0 && tokenStart < pos) {
+                updateLocation(0, tokenStart);
+                tokenLine = lineBase;
+                tokenColumn = columnBase;
+                updateLocation(tokenStart, pos);
+            } else {
+                updateLocation(0, pos);
+            }
+            crBeforeBuf = buf[pos - 1] == '\r' && pos == limit;
+            discarded += pos;
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            tokenStart -= pos;
+            pos = 0;
+        }
+        if (n > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(n, buf.length * 2));
+        try {
+            while (limit < n) {
+                int r = in.read(buf, limit, buf.length - limit);
+                if (r < 0) {
+                    eof = true;
+                    return false;
+                }
+                limit += r;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    private void updateLocation(int start, int end) {
+        for (int i = locationStart(start); i < end; ++i) {
+            if (isLineEnd(i)) {
+                lineBase++;
+                columnBase = 0;
+            } else {
+                columnBase++;
+            }
+        }
+    }
+
+    private int locationStart(int start) {
+        return start == 0 && crBeforeBuf && buf[0] == '\n' ? 1 : start;
+    }
+
+    private boolean isLineEnd(int i) {
+        char c = buf[i];
+        return c == '\n' || (c == '\r' && (i + 1 >= limit || buf[i + 1] != '\n'));
+    }
+
+    private int scan() {
+        skipAtmosphere();
+        tokenStart = pos;
+        int c = peek(0);
+        switch (c) {
+            case EOF:
+                return T_EOF;
+            case '(':
+                pos++;
+                return T_OPEN;
+            case ')':
+                pos++;
+                return T_CLOSE;
+            case '\'':
+                pos++;
+                return T_QUOTE;
+            case '`':
+                pos++;
+                return T_QUASIQUOTE;
+            case ',':
+                if (peek(1) == '@') {
+                    pos += 2;
+                    return T_UNQUOTE_SPLICING;
+                }
+                pos++;
+                return T_UNQUOTE;
+            case '"':
+                pos++;
+                scanEscaped('"');
+                return T_STRING;
+            case '|':
+                pos++;
+                scanEscaped('|');
+                return T_SYMBOL;
+            case '#':
+                return scanSharp();
+            default:
+                return scanNumberOrIdentifier();
+        }
+    }
+
+    private void skipAtmosphere() {
+        while (true) {
+            int c = peek(0);
+            if (isWhitespace(c)) {
+                pos++;
+            } else if (c == ';') {
+                pos++;
+                while ((c = peek(0)) != EOF && c != '\n' && c != '\r')
+                    pos++;
+            } else if (c == '#' && peek(1) == '|') {
+                skipBlockComment();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void skipBlockComment() {
+        tokenStart = pos;
+        pos += 2;
+        int depth = 1;
+        while (depth > 0) {
+            int c = peek(0);
+            if (c == EOF) {
+                throw error("unterminated block comment");
+            } else if (c == '#' && peek(1) == '|') {
+                pos += 2;
+                depth++;
+            } else if (c == '|' && peek(1) == '#') {
+                pos += 2;
+                depth--;
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    private int scanSharp() {
+        int c = peek(1);
+        switch (c) {
+            case ';':
+                pos += 2;
+                return T_DATUM_COMMENT;
+            case '(':
+                pos += 2;
+                return T_OPEN_VECTOR;
+            case '\\':
+                pos += 2;
+                codePoint = scanCharacter();
+                if (Character.isDefined(codePoint) == false)
+                    throw error(String.format("character out of range: 0x%x", codePoint));
+                return T_CHARACTER;
+            case 't':
+            case 'T':
+                pos += 2;
+                skipIgnoreCase("rue");
+                booleanValue = true;
+                return T_BOOLEAN;
+            case 'f':
+            case 'F':
+                pos += 2;
+                skipIgnoreCase("alse");
+                booleanValue = false;
+                return T_BOOLEAN;
+            case 'u':
+            case 'U':
+                if (peek(2) == '8' && peek(3) == '(') {
+                    pos += 4;
+                    return T_OPEN_BYTEVECTOR;
+                }
+                break;
+            case 'd':
+            case 'D': {
+                int len = decimalLength(2);
+                if (len > 0) {
+                    pos += 2;
+                    return scanDecimal(len);
+                }
+                break;
+            }
+            case 'b':
+            case 'B':
+                return scanRadixInteger(2);
+            case 'o':
+            case 'O':
+                return scanRadixInteger(8);
+            case 'x':
+            case 'X':
+                return scanRadixInteger(16);
+            default:
+                break;
+        }
+        throw error("unexpected character after '#'");
+    }
+
+    private void skipIgnoreCase(String s) {
+        if (matchesIgnoreCase(s))
+            pos += s.length();
+    }
+
+    private boolean matchesIgnoreCase(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            if (Character.toLowerCase(peek(i)) != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private int scanCharacter() {
+        int c = peek(0);
+        if (c == EOF)
+            throw error("unexpected end of input in character");
+        if ((c == 'x' || c == 'X') && digitValue(peek(1), 16) >= 0) {
+            pos++;
+            int cp = 0;
+            int d;
+            while ((d = digitValue(peek(0), 16)) >= 0) {
+                if (cp > (Character.MAX_CODE_POINT >> 4))
+                    throw error("character code out of range");
+                cp = (cp << 4) | d;
+                pos++;
+            }
+            return cp;
+        }
+        if (isLetter(c)) {
+            int best = -1;
+            for (int i = 0; i < CHARACTER_NAMES.length; ++i) {
+                if (matchesIgnoreCase(CHARACTER_NAMES[i])
+                        && (best < 0 || CHARACTER_NAMES[i].length() > CHARACTER_NAMES[best].length()))
+                    best = i;
+            }
+            if (best >= 0) {
+                pos += CHARACTER_NAMES[best].length();
+                return CHARACTER_NAME_VALUES[best];
+            }
+        }
+        peek(1);
+        int cp = Character.codePointAt(buf, pos, limit);
+        pos += Character.charCount(cp);
+        return cp;
+    }
+
+    private int scanRadixInteger(int radix) {
+        int i = 2;
+        int c = peek(i);
+        if (c == '+' || c == '-')
+            i++;
+        int start = i;
+        while (digitValue(peek(i), radix) >= 0)
+            i++;
+        if (i == start)
+            throw error("malformed integer");
+        setInteger(pos + 2, pos + i, radix);
+        pos += i;
+        return T_INTEGER;
+    }
+
+    private int scanNumberOrIdentifier() {
+        int numberLength = decimalLength(0);
+        int identifierLength = identifierLength();
+        if (numberLength == 0 && identifierLength == 0) {
+            if (peek(0) == '.') {
+                pos++;
+                return T_DOT;
+            }
+            throw error("unexpected character");
+        }
+        if (numberLength >= identifierLength)
+            return scanDecimal(numberLength);
+
+        text.setLength(0);
+        text.append(buf, pos, identifierLength);
+        pos += identifierLength;
+        if (identifierLength == 6) {
+            if (equalsIgnoreCase(text, "+nan.0") || equalsIgnoreCase(text, "-nan.0"))
+                return T_NAN;
+            if (equalsIgnoreCase(text, "+inf.0") || equalsIgnoreCase(text, "-inf.0")) {
+                booleanValue = text.charAt(0) == '-';
+                return T_INFINITY;
+            }
+        }
+        return T_SYMBOL;
+    }
+
+    private static boolean equalsIgnoreCase(CharSequence s, String lower) {
+        for (int i = 0; i < lower.length(); ++i) {
+            if (Character.toLowerCase(s.charAt(i)) != lower.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private int scanDecimal(int length) {
+        int start = pos;
+        pos += length;
+        for (int i = start; i < pos; ++i) {
+            char c = buf[i];
+            if (c == '.' || c == 'e' || c == 'E') {
+                setFlonum(start, pos);
+                return T_FLONUM;
+            }
+        }
+        setInteger(start, pos, 10);
+        return T_INTEGER;
+    }
+
+    // uses a double when the decimal has at most 15 significant digits, which round-trip exactly,
+    // or when it is how the double would be written
+    private void setFlonum(int start, int end) {
+        boolean negative = buf[start] == '-';
+        int unsigned = (buf[start] == '+' || negative) ? start + 1 : start;
+        int i = unsigned;
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (; i < end; ++i) {
+            char c = buf[i];
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            if (c == 'e' || c == 'E')
+                break;
+            int d = c - '0';
+            if (mantissa == 0 && d == 0) {
+                if (fraction)
+                    exponent--;
+                continue;
+            }
+            if (digits < 18)
+                mantissa = mantissa * 10 + d;
+            else if (!fraction)
+                exponent++;
+            digits++;
+            if (fraction && digits <= 18)
+                exponent--;
+        }
+        if (i < end) {
+            int e = 0;
+            for (i++; i < end && e < 100000; ++i)
+                e = e * 10 + (buf[i] - '0');
+            exponent += e;
+        }
+        if (digits > SExprs.MAX_EXACT_FLONUM_DIGITS
+                || Math.abs(exponent + digits) > SExprs.MAX_EXACT_FLONUM_EXPONENT) {
+            BigDecimal exact = new BigDecimal(buf, start, end - start);
+            if (digits <= SExprs.MAX_WRITTEN_FLONUM_DIGITS && SExprs.isWrittenFlonum(exact)) {
+                doubleValue = exact.doubleValue();
+                flonumValue = null;
+            } else {
+                flonumValue = exact;
+            }
+            return;
+        }
+        double d;
+        if (mantissa == 0) {
+            // like BigDecimal, there is no negative zero
+            d = 0.0;
+            negative = false;
+        } else if (-POWERS_OF_TEN.length < exponent && exponent < POWERS_OF_TEN.length)
+            // both operands are exact, so the result is correctly rounded
+            d = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        else
+            d = Double.parseDouble(new String(buf, unsigned, end - unsigned));
+        doubleValue = negative ? -d : d;
+        flonumValue = null;
+    }
+
+    private void setInteger(int start, int end, int radix) {
+        boolean negative = buf[start] == '-';
+        int i = (buf[start] == '+' || negative) ? start + 1 : start;
+        if (end - i <= SAFE_LONG_DIGITS[radix]) {
+            long n = 0;
+            for (; i < end; ++i)
+                n = n * radix + digitValue(buf[i], radix);
+            longValue = negative ? -n : n;
+            bigIntegerValue = null;
+            return;
+        }
+        BigInteger n = new BigInteger(new String(buf, start, end - start), radix);
+        if (n.bitLength() < 64) {
+            longValue = n.longValue();
+            bigIntegerValue = null;
+        } else {
+            bigIntegerValue = n;
+        }
+    }
+
+    // length of the longest Integer10 or Flonum (without Radix10) at offset, or 0
+    private int decimalLength(int offset) {
+        int i = offset;
+        int c = peek(i);
+        if (c == '+' || c == '-')
+            c = peek(++i);
+        int intStart = i;
+        while (isDigit(peek(i)))
+            i++;
+        boolean hasIntDigits = i > intStart;
+        int end = hasIntDigits ? i : 0;
+        if (peek(i) == '.') {
+            int fracStart = ++i;
+            while (isDigit(peek(i)))
+                i++;
+            if (hasIntDigits || i > fracStart)
+                end = i;
+            else
+                return 0;
+        } else if (!hasIntDigits) {
+            return 0;
+        }
+        int e = peek(i);
+        if ((e == 'e' || e == 'E') && isDigit(peek(i + 1))) {
+            i += 2;
+            while (isDigit(peek(i)))
+                i++;
+            end = i;
+        }
+        return end == 0 ? 0 : end - offset;
+    }
+
+    // length of the longest Identifier at the current position, or 0
+    private int identifierLength() {
+        int c = peek(0);
+        int i;
+        if (isInitial(c)) {
+            i = 1;
+        } else if (c == '+' || c == '-') {
+            if (isSignSubsequent(peek(1)))
+                i = 2;
+            else if (peek(1) == '.' && isDotSubsequent(peek(2)))
+                i = 3;
+            else
+                return 1;
+        } else if (c == '.') {
+            if (isDotSubsequent(peek(1)))
+                i = 2;
+            else
+                return 0;
+        } else {
+            return 0;
+        }
+        while (isSubsequent(peek(i)))
+            i++;
+        return i;
+    }
+
+    private void scanEscaped(char quote) {
+        text.setLength(0);
+        while (true) {
+            int c = peek(0);
+            if (c == EOF)
+                throw error(quote == '"' ? "unterminated string" : "unterminated symbol");
+            pos++;
+            if (c == quote)
+                return;
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+            c = peek(0);
+            pos++;
+            switch (c) {
+                case 'a':
+                    text.append('\u0007');
+                    break;
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 'x':
+                case 'X':
+                    text.appendCodePoint(scanHexEscape());
+                    break;
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    pos--;
+                    skipLineContinuation();
+                    break;
+                default:
+                    if (c == quote) {
+                        text.append(quote);
+                        break;
+                    }
+                    pos--;
+                    throw error("unknown escape sequence");
+            }
+        }
+    }
+
+    private int scanHexEscape() {
+        int cp = 0;
+        int digits = 0;
+        int d;
+        // counts digits rather than comparing pos, which peek rebases when it refills buf
+        while ((d = digitValue(peek(0), 16)) >= 0) {
+            if (cp > (Character.MAX_CODE_POINT >> 4))
+                throw error("character code out of range");
+            cp = (cp << 4) | d;
+            digits++;
+            pos++;
+        }
+        if (digits == 0 || peek(0) != ';')
+            throw error("malformed hex escape");
+        pos++;
+        return cp;
+    }
+
+    private void skipLineContinuation() {
+        while (peek(0) == ' ' || peek(0) == '\t')
+            pos++;
+        int c = peek(0);
+        if (c == '\r') {
+            pos++;
+            if (peek(0) == '\n')
+                pos++;
+        } else if (c == '\n') {
+            pos++;
+        } else {
+            throw error("unknown escape sequence");
+        }
+        while (peek(0) == ' ' || peek(0) == '\t')
+            pos++;
+    }
+
+    private RuntimeException error(String message) {
+        if (tokenStart < 0)
+            return new RuntimeException(String.format("line %d:%d %s", tokenLine, tokenColumn, message));
+        int at = Math.min(tokenStart, pos);
+        int line = lineBase;
+        int column = columnBase;
+        for (int i = locationStart(0); i < at; ++i) {
+            if (isLineEnd(i)) {
+                line++;
+                column = 0;
+            } else {
+                column++;
+            }
+        }
+        return new RuntimeException(String.format("line %d:%d %s", line, column, message));
+    }
+
+    // character classes
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isDigit(int c) {
+        return '0' <= c && c <= '9';
+    }
+
+    private static int digitValue(int c, int radix) {
+        int d;
+        if ('0' <= c && c <= '9')
+            d = c - '0';
+        else if ('a' <= c && c <= 'f')
+            d = c - 'a' + 10;
+        else if ('A' <= c && c <= 'F')
+            d = c - 'A' + 10;
+        else
+            return -1;
+        return d < radix ? d : -1;
+    }
+
+    private static boolean isLetter(int c) {
+        return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
+    }
+
+    private static boolean isInitial(int c) {
+        if (isLetter(c))
+            return true;
+        switch (c) {
+            case '!':
+            case '$':
+            case '%':
+            case '&':
+            case '*':
+            case '/':
+            case ':':
+            case '<':
+            case '=':
+            case '>':
+            case '?':
+            case '^':
+            case '_':
+            case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isSubsequent(int c) {
+        return isInitial(c) || isDigit(c) || c == '+' || c == '-' || c == '.' || c == '@';
+    }
+
+    private static boolean isSignSubsequent(int c) {
+        return isInitial(c) || c == '+' || c == '-' || c == '@';
+    }
+
+    private static boolean isDotSubsequent(int c) {
+        return isSignSubsequent(c) || c == '.';
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.leque.sexpr.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Selects subtrees by a path, building {@link SExpr}s only for the selected ones.
+ *
+ * <p>A path is a sequence of steps. The first step selects among the top-level datums,
+ * and each following step among the elements of the lists and vectors selected by the previous one.
+ * For example, {@code SExprSelector.of(head("config"), head("server"), index(2))} selects {@code 8080}
+ * from {@code (config (server "localhost" 8080))}.
+ * Everything else is passed over with {@link SExprReader#skip()}, which only matches parentheses.
+ * The tail of a dotted list is never selected, as it is not one of the {@link SExpr#elements()}.
+ */
+public final class SExprSelector {
+    public static final class Step {
+        private final int index;
+        private final String head;
+
+        private Step(int index, String head) {
+            this.index = index;
+            this.head = head;
+        }
+
+        @Override
+        public String toString() {
+            return head != null ? "head(" + head + ")" : index >= 0 ? "index(" + index + ")" : "any()";
+        }
+    }
+
+    private final Step[] steps;
+
+    private SExprSelector(Step[] steps) {
+        this.steps = steps;
+    }
+
+    public static SExprSelector of(Step... steps) {
+        if (steps.length == 0)
+            throw new IllegalArgumentException("empty path");
+        return new SExprSelector(steps.clone());
+    }
+
+    /**
+     * Selects the {@code index}-th element.
+     */
+    public static Step index(int index) {
+        if (index < 0)
+            throw new IllegalArgumentException("negative index: " + index);
+        return new Step(index, null);
+    }
+
+    /**
+     * Selects the lists whose first element is the symbol {@code name}, including abbreviations such as {@code 'a}.
+     */
+    public static Step head(String name) {
+        return new Step(-1, name);
+    }
+
+    /**
+     * Selects every element.
+     */
+    public static Step any() {
+        return new Step(-1, null);
+    }
+
+    public List<SExpr> select(CharSequence input) {
+        return select(new SExprReader(input));
+    }
+
+    /**
+     * Selects from the remaining datums of {@code reader}.
+     */
+    public List<SExpr> select(SExprReader reader) {
+        List<SExpr> results = new ArrayList<>();
+        select(reader, results, Integer.MAX_VALUE);
+        return results;
+    }
+
+    /**
+     * Returns the first selected datum, reading no further than needed.
+     */
+    public Optional<SExpr> selectFirst(SExprReader reader) {
+        List<SExpr> results = new ArrayList<>(1);
+        select(reader, results, 1);
+        return results.stream().findFirst();
+    }
+
+    private void select(SExprReader reader, List<SExpr> results, int limit) {
+        SExprBuilder builder = new SExprBuilder();
+        int last = steps.length - 1;
+        int[] counts = new int[steps.length];
+        boolean[] dotted = new boolean[steps.length];
+        // the number of lists after a dot whose elements continue the list at each level, as in (a . (b c))
+        int[] spliced = new int[steps.length];
+        boolean[] abbreviations = new boolean[steps.length];
+        int level = 0;
+        // whether the current event is the head of a list entered by a head step, and still to be selected from
+        boolean replay = false;
+        while (results.size() < limit) {
+            SExprReader.Event e;
+            if (replay) {
+                e = reader.getEvent();
+                replay = false;
+            } else {
+                e = reader.nextEvent();
+                switch (e) {
+                    case END_OF_INPUT:
+                        return;
+                    case END_LIST:
+                    case END_VECTOR:
+                    case END_ABBREVIATION:
+                        if (spliced[level] > 0)
+                            spliced[level]--;
+                        else
+                            level--;
+                        continue;
+                    case DOT:
+                        dotted[level] = true;
+                        continue;
+                    default:
+                        break;
+                }
+            }
+            Step step = steps[level];
+            if (dotted[level]) {
+                dotted[level] = false;
+                if (e == SExprReader.Event.START_LIST) {
+                    spliced[level]++;
+                } else if (e == SExprReader.Event.START_ABBREVIATION) {
+                    spliced[level]++;
+                    if (level == last && selectsAtom(step, counts[level]))
+                        results.add(SExprs.symbolValue(reader.getAbbreviation()));
+                    counts[level]++;
+                } else {
+                    // the tail is not an element
+                    reader.skip();
+                }
+                continue;
+            }
+            int index = counts[level]++;
+            if (step.index >= 0 && index > step.index && spliced[level] == 0) {
+                // no more element can be selected at this level
+                if (level == 0)
+                    return;
+                reader.skip();
+                if (!abbreviations[level]) {
+                    reader.skipRest();
+                    level--;
+                }
+                continue;
+            }
+            if (step.index >= 0 && index != step.index) {
+                reader.skip();
+                continue;
+            }
+            if (step.head != null) {
+                if (e == SExprReader.Event.START_LIST) {
+                    int depth = reader.getDepth() - 1;
+                    SExprReader.Event first = reader.nextEvent();
+                    if (first == SExprReader.Event.END_LIST)
+                        continue;
+                    if (first != SExprReader.Event.SYMBOL || !step.head.contentEquals(reader.getText())) {
+                        reader.skip();
+                        reader.skipRest();
+                        continue;
+                    }
+                    if (level == last) {
+                        builder.startList();
+                        reader.report(builder);
+                        while (reader.getDepth() > depth) {
+                            reader.nextEvent();
+                            reader.report(builder);
+                        }
+                        results.add(builder.getResult());
+                        continue;
+                    }
+                    level = enter(level, false, counts, dotted, spliced, abbreviations);
+                    replay = true;
+                    continue;
+                }
+                if (e != SExprReader.Event.START_ABBREVIATION || !step.head.equals(reader.getAbbreviation())) {
+                    reader.skip();
+                    continue;
+                }
+            }
+            if (level == last) {
+                results.add(readDatum(reader, builder));
+                continue;
+            }
+            switch (e) {
+                case START_LIST:
+                case START_VECTOR:
+                    level = enter(level, false, counts, dotted, spliced, abbreviations);
+                    break;
+                case START_ABBREVIATION: {
+                    // the abbreviation is a list whose first element is not in the input
+                    level = enter(level, true, counts, dotted, spliced, abbreviations);
+                    counts[level] = 1;
+                    if (level == last && selectsAtom(steps[level], 0))
+                        results.add(SExprs.symbolValue(reader.getAbbreviation()));
+                    break;
+                }
+                default:
+                    // an atom has no elements to select from
+                    break;
+            }
+        }
+    }
+
+    private static boolean selectsAtom(Step step, int index) {
+        return step.head == null && (step.index < 0 || step.index == index);
+    }
+
+    private static int enter(int level, boolean abbreviation,
+                             int[] counts, boolean[] dotted, int[] spliced, boolean[] abbreviations) {
+        level++;
+        counts[level] = 0;
+        dotted[level] = false;
+        spliced[level] = 0;
+        abbreviations[level] = abbreviation;
+        return level;
+    }
+
+    // builds the datum started by the current event
+    private static SExpr readDatum(SExprReader reader, SExprBuilder builder) {
+        SExprReader.Event e = reader.getEvent();
+        int depth = reader.getDepth();
+        if (e == SExprReader.Event.START_LIST || e == SExprReader.Event.START_VECTOR
+                || e == SExprReader.Event.START_ABBREVIATION)
+            depth--;
+        reader.report(builder);
+        while (reader.getDepth() > depth) {
+            reader.nextEvent();
+            reader.report(builder);
+        }
+        return builder.getResult();
+    }
+
+    @Override
+    public String toString() {
+        return "SExprSelector" + Arrays.toString(steps);
+    }
+}
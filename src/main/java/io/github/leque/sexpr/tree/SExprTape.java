@@ -0,0 +1,559 @@
+package io.github.leque.sexpr.tree;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A sequence of parsed datums stored in flat arrays instead of one object per node.
+ *
+ * <p>Nodes are numbered in preorder. For each node the tape holds its kind, the number of the node
+ * following its subtree, a payload and its source span in chars.
+ * The payload of a list or vector is its element count, not counting the tail of a dotted list.
+ * Strings, symbols, big numbers and bytevectors are kept in a pool, where equal symbol names share one entry.
+ * An abbreviation such as {@code 'a} is stored as the list it stands for,
+ * and {@code (a . (b))} as {@code (a b)}, so that a tape and the {@link SExpr} it describes agree.
+ *
+ * <p>A {@link Cursor} walks the tape without allocating, and {@link #get(int)} returns a datum
+ * as an {@link SExpr} whose lists and vectors materialize their elements when they are first accessed.
+ * A tape is immutable and can be shared between threads.
+ */
+public final class SExprTape {
+    public enum Kind {
+        BOOLEAN,
+        CHARACTER,
+        FIXNUM,
+        FLONUM,
+        BIGNUM,
+        DECIMAL,
+        INFINITY,
+        NAN,
+        STRING,
+        SYMBOL,
+        BYTEVECTOR,
+        LIST,
+        DOTTED_LIST,
+        VECTOR;
+
+        public boolean isCompound() {
+            return this == LIST || this == DOTTED_LIST || this == VECTOR;
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final int size;
+    private final byte[] kinds;
+    private final int[] nexts;
+    private final long[] values;
+    private final int[] starts;
+    private final int[] ends;
+    private final Object[] pool;
+    private final int[] roots;
+    // materialized symbols by pool index, so that each name has a single node
+    private final SExpr[] symbols;
+
+    private SExprTape(Builder b) {
+        this.size = b.size;
+        this.kinds = b.kinds;
+        this.nexts = b.nexts;
+        this.values = b.values;
+        this.starts = b.starts;
+        this.ends = b.ends;
+        this.pool = b.pool;
+        this.roots = Arrays.copyOf(b.roots, b.rootCount);
+        this.symbols = new SExpr[b.poolSize];
+    }
+
+    public static SExprTape parse(CharSequence input) {
+        return read(new SExprReader(input));
+    }
+
+    /**
+     * Reads all remaining datums of {@code reader} into a tape.
+     */
+    public static SExprTape read(SExprReader reader) {
+        Builder builder = new Builder();
+        builder.read(reader);
+        return new SExprTape(builder);
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of top-level datums.
+     */
+    public int datumCount() {
+        return roots.length;
+    }
+
+    /**
+     * Returns the {@code index}-th top-level datum.
+     */
+    public SExpr get(int index) {
+        return node(roots[Objects.checkIndex(index, roots.length)]);
+    }
+
+    /**
+     * Returns a cursor at the first top-level datum.
+     */
+    public Cursor cursor() {
+        return cursor(0);
+    }
+
+    /**
+     * Returns a cursor at the {@code index}-th top-level datum.
+     */
+    public Cursor cursor(int index) {
+        return new Cursor(this, roots[Objects.checkIndex(index, roots.length)]);
+    }
+
+    private SExpr node(int node) {
+        long value = values[node];
+        switch (KINDS[kinds[node]]) {
+            case BOOLEAN:
+                return value != 0 ? SExprs.trueValue() : SExprs.falseValue();
+            case CHARACTER:
+                return SExprs.characterValue((int) value);
+            case FIXNUM:
+                return SExprs.numberValue(value);
+            case FLONUM:
+                return SExprs.flonumValue(Double.longBitsToDouble(value));
+            case BIGNUM:
+                return SExprs.numberValue((BigInteger) pool[(int) value]);
+            case DECIMAL:
+                return SExprs.numberValue((BigDecimal) pool[(int) value]);
+            case INFINITY:
+                return value != 0 ? SExprs.negativeInfinityValue() : SExprs.positiveInfinityValue();
+            case NAN:
+                return SExprs.nanValue();
+            case STRING:
+                return SExprs.stringValue((String) pool[(int) value]);
+            case SYMBOL: {
+                SExpr symbol = symbols[(int) value];
+                if (symbol == null)
+                    symbols[(int) value] = symbol = SExprs.symbolValue((String) pool[(int) value]);
+                return symbol;
+            }
+            case BYTEVECTOR:
+                return SExprs.bytevectorValue(((byte[]) pool[(int) value]).clone());
+            case LIST:
+                return SExprs.listView(new Elements(this, node, (int) value));
+            case VECTOR:
+                return SExprs.vectorView(new Elements(this, node, (int) value));
+            default: {
+                Elements elements = new Elements(this, node, (int) value);
+                return SExprs.dottedListView(elements, node(elements.tail));
+            }
+        }
+    }
+
+    // the elements of a list or vector, materialized on first access
+    private static final class Elements extends AbstractList<SExpr> implements RandomAccess {
+        private final SExprTape tape;
+        private final int[] children;
+        private final SExpr[] cache;
+        private final int tail;
+
+        Elements(SExprTape tape, int node, int count) {
+            this.tape = tape;
+            this.children = new int[count];
+            this.cache = new SExpr[count];
+            int child = node + 1;
+            for (int i = 0; i < count; ++i) {
+                children[i] = child;
+                child = tape.nexts[child];
+            }
+            this.tail = child;
+        }
+
+        @Override
+        public SExpr get(int index) {
+            SExpr e = cache[Objects.checkIndex(index, cache.length)];
+            if (e == null)
+                cache[index] = e = tape.node(children[index]);
+            return e;
+        }
+
+        @Override
+        public int size() {
+            return cache.length;
+        }
+    }
+
+    /**
+     * A position in a tape. A cursor starts at a top-level datum and moves without allocating,
+     * except that the path from the top level grows as needed. Instances are not thread-safe.
+     */
+    public static final class Cursor {
+        private final SExprTape tape;
+        private int node;
+        private int[] parents = new int[16];
+        private int depth;
+
+        private Cursor(SExprTape tape, int node) {
+            this.tape = tape;
+            this.node = node;
+        }
+
+        public Kind kind() {
+            return KINDS[tape.kinds[node]];
+        }
+
+        /**
+         * Returns the number of lists and vectors containing the current node.
+         */
+        public int depth() {
+            return depth;
+        }
+
+        /**
+         * Returns the offset in chars of the start of the current node in the input.
+         */
+        public int start() {
+            return tape.starts[node];
+        }
+
+        /**
+         * Returns the offset in chars of the end of the current node in the input.
+         */
+        public int end() {
+            return tape.ends[node];
+        }
+
+        /**
+         * Returns {@code true} if the current node is the tail of a dotted list.
+         */
+        public boolean isTail() {
+            return depth > 0 && tape.kinds[parents[depth - 1]] == Kind.DOTTED_LIST.ordinal()
+                    && tape.nexts[node] == tape.nexts[parents[depth - 1]];
+        }
+
+        /**
+         * Moves to the first element of the current list or vector.
+         *
+         * @return {@code false} if the current node is not a list or vector, or it is empty
+         */
+        public boolean firstChild() {
+            if (!kind().isCompound() || tape.nexts[node] == node + 1)
+                return false;
+            if (depth == parents.length)
+                parents = Arrays.copyOf(parents, depth * 2);
+            parents[depth++] = node;
+            node++;
+            return true;
+        }
+
+        /**
+         * Moves to the next element of the containing list or vector, including the tail of a dotted list,
+         * or to the next top-level datum at the top level.
+         *
+         * @return {@code false} if there is no next element
+         */
+        public boolean nextSibling() {
+            int next = tape.nexts[node];
+            int limit = depth == 0 ? tape.size : tape.nexts[parents[depth - 1]];
+            if (next >= limit)
+                return false;
+            node = next;
+            return true;
+        }
+
+        /**
+         * Moves to the containing list or vector.
+         *
+         * @return {@code false} at the top level
+         */
+        public boolean parent() {
+            if (depth == 0)
+                return false;
+            node = parents[--depth];
+            return true;
+        }
+
+        /**
+         * Returns the current node as an {@link SExpr} which materializes its elements lazily.
+         */
+        public SExpr toSExpr() {
+            return tape.node(node);
+        }
+
+        /**
+         * Returns the number of elements of a list or vector, not counting the tail of a dotted list.
+         */
+        public int count() {
+            if (!kind().isCompound())
+                throw new UnsupportedOperationException("not a list or vector");
+            return (int) tape.values[node];
+        }
+
+        public boolean booleanValue() {
+            return payload(Kind.BOOLEAN, "not a boolean") != 0;
+        }
+
+        public int codePoint() {
+            return (int) payload(Kind.CHARACTER, "not a character");
+        }
+
+        public long longValue() {
+            return payload(Kind.FIXNUM, "not a fixnum");
+        }
+
+        /**
+         * Returns the value of a number, an infinity or a NaN as a {@code double}.
+         */
+        public double doubleValue() {
+            long value = tape.values[node];
+            switch (kind()) {
+                case FIXNUM:
+                    return value;
+                case FLONUM:
+                    return Double.longBitsToDouble(value);
+                case BIGNUM:
+                case DECIMAL:
+                    return ((Number) tape.pool[(int) value]).doubleValue();
+                case INFINITY:
+                    return value != 0 ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+                case NAN:
+                    return Double.NaN;
+                default:
+                    throw new UnsupportedOperationException("not a number");
+            }
+        }
+
+        public String stringValue() {
+            return (String) tape.pool[(int) payload(Kind.STRING, "not a string")];
+        }
+
+        public String symbolName() {
+            return (String) tape.pool[(int) payload(Kind.SYMBOL, "not a symbol")];
+        }
+
+        public int bytevectorLength() {
+            return ((byte[]) tape.pool[(int) payload(Kind.BYTEVECTOR, "not a bytevector")]).length;
+        }
+
+        /**
+         * Returns the {@code index}-th byte of a bytevector as a value in {@code 0..255}.
+         */
+        public int bytevectorRef(int index) {
+            byte[] bytes = (byte[]) tape.pool[(int) payload(Kind.BYTEVECTOR, "not a bytevector")];
+            return bytes[index] - Byte.MIN_VALUE;
+        }
+
+        private long payload(Kind kind, String message) {
+            if (tape.kinds[node] != kind.ordinal())
+                throw new UnsupportedOperationException(message);
+            return tape.values[node];
+        }
+    }
+
+    private static final class Builder {
+        private int size;
+        private byte[] kinds = new byte[64];
+        private int[] nexts = new int[64];
+        private long[] values = new long[64];
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+
+        private Object[] pool = new Object[16];
+        private int poolSize;
+        // open addressing table of symbol pool indices plus one
+        private int[] symbolSlots = new int[64];
+        private int symbolCount;
+
+        private int[] roots = new int[4];
+        private int rootCount;
+
+        // open lists, vectors and abbreviations; a spliced frame adds to the node of the frame below it
+        private int[] frameNodes = new int[16];
+        private int[] dotIndexes = new int[16];
+        private boolean[] spliced = new boolean[16];
+        private int sp;
+
+        void read(SExprReader reader) {
+            while (true) {
+                SExprReader.Event e = reader.nextEvent();
+                long start = reader.getStartOffset();
+                long end = reader.getEndOffset();
+                switch (e) {
+                    case END_OF_INPUT:
+                        return;
+                    case START_LIST:
+                        if (afterDot()) {
+                            pushFrame(frameNodes[sp - 1], true);
+                        } else {
+                            pushFrame(add(Kind.LIST, 0, start, end), false);
+                        }
+                        break;
+                    case DOT:
+                        dotIndexes[sp - 1] = (int) values[frameNodes[sp - 1]];
+                        break;
+                    case END_LIST:
+                    case END_VECTOR:
+                    case END_ABBREVIATION:
+                        popFrame(end);
+                        break;
+                    case START_VECTOR:
+                        pushFrame(add(Kind.VECTOR, 0, start, end), false);
+                        break;
+                    case START_ABBREVIATION:
+                        if (afterDot()) {
+                            pushFrame(frameNodes[sp - 1], true);
+                        } else {
+                            pushFrame(add(Kind.LIST, 0, start, end), false);
+                        }
+                        add(Kind.SYMBOL, symbol(reader.getAbbreviation()), start, end);
+                        break;
+                    case BOOLEAN:
+                        add(Kind.BOOLEAN, reader.getBooleanValue() ? 1 : 0, start, end);
+                        break;
+                    case CHARACTER:
+                        add(Kind.CHARACTER, reader.getCharacterCodePoint(), start, end);
+                        break;
+                    case INTEGER:
+                        if (reader.isLongValue())
+                            add(Kind.FIXNUM, reader.getLongValue(), start, end);
+                        else
+                            add(Kind.BIGNUM, addPool(reader.getIntegerValue()), start, end);
+                        break;
+                    case FLONUM:
+                        if (reader.isDoubleValue())
+                            add(Kind.FLONUM, Double.doubleToRawLongBits(reader.getDoubleValue()), start, end);
+                        else
+                            add(Kind.DECIMAL, addPool(reader.getFlonumValue()), start, end);
+                        break;
+                    case INFINITY:
+                        add(Kind.INFINITY, reader.isNegativeInfinity() ? 1 : 0, start, end);
+                        break;
+                    case NAN:
+                        add(Kind.NAN, 0, start, end);
+                        break;
+                    case STRING:
+                        add(Kind.STRING, addPool(reader.getText().toString()), start, end);
+                        break;
+                    case SYMBOL:
+                        add(Kind.SYMBOL, symbol(reader.getText()), start, end);
+                        break;
+                    case BYTEVECTOR:
+                        add(Kind.BYTEVECTOR, addPool(reader.getBytevectorElements()), start, end);
+                        break;
+                }
+            }
+        }
+
+        // (a . (b ...)) is (a b ...), so the elements after such a dot continue the enclosing list
+        private boolean afterDot() {
+            return sp > 0 && dotIndexes[sp - 1] >= 0 && dotIndexes[sp - 1] == values[frameNodes[sp - 1]];
+        }
+
+        private int add(Kind kind, long value, long start, long end) {
+            if (size == kinds.length) {
+                int capacity = size * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                nexts = Arrays.copyOf(nexts, capacity);
+                values = Arrays.copyOf(values, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            if (end > Integer.MAX_VALUE)
+                throw new IllegalStateException("input too large for a tape: " + end + " chars");
+            int node = size++;
+            kinds[node] = (byte) kind.ordinal();
+            nexts[node] = size;
+            values[node] = value;
+            starts[node] = (int) start;
+            ends[node] = (int) end;
+            if (sp > 0) {
+                values[frameNodes[sp - 1]]++;
+            } else {
+                if (rootCount == roots.length)
+                    roots = Arrays.copyOf(roots, rootCount * 2);
+                roots[rootCount++] = node;
+            }
+            return node;
+        }
+
+        private void pushFrame(int node, boolean splice) {
+            if (sp == frameNodes.length) {
+                frameNodes = Arrays.copyOf(frameNodes, sp * 2);
+                dotIndexes = Arrays.copyOf(dotIndexes, sp * 2);
+                spliced = Arrays.copyOf(spliced, sp * 2);
+            }
+            if (splice)
+                dotIndexes[sp - 1] = -1;
+            frameNodes[sp] = node;
+            dotIndexes[sp] = -1;
+            spliced[sp] = splice;
+            sp++;
+        }
+
+        private void popFrame(long end) {
+            int top = --sp;
+            if (spliced[top]) {
+                // a dot inside the spliced list belongs to the enclosing one
+                dotIndexes[top - 1] = dotIndexes[top];
+                return;
+            }
+            int node = frameNodes[top];
+            if (dotIndexes[top] >= 0) {
+                kinds[node] = (byte) Kind.DOTTED_LIST.ordinal();
+                values[node] = dotIndexes[top];
+            }
+            nexts[node] = size;
+            ends[node] = (int) end;
+        }
+
+        private int addPool(Object value) {
+            if (poolSize == pool.length)
+                pool = Arrays.copyOf(pool, poolSize * 2);
+            pool[poolSize] = value;
+            return poolSize++;
+        }
+
+        private int symbol(CharSequence name) {
+            int mask = symbolSlots.length - 1;
+            for (int i = hash(name) & mask; ; i = (i + 1) & mask) {
+                int slot = symbolSlots[i];
+                if (slot == 0) {
+                    int index = addPool(name.toString());
+                    symbolSlots[i] = index + 1;
+                    if (++symbolCount * 2 > symbolSlots.length)
+                        rehash();
+                    return index;
+                }
+                if (((String) pool[slot - 1]).contentEquals(name))
+                    return slot - 1;
+            }
+        }
+
+        private void rehash() {
+            int[] old = symbolSlots;
+            symbolSlots = new int[old.length * 2];
+            int mask = symbolSlots.length - 1;
+            for (int slot : old) {
+                if (slot == 0)
+                    continue;
+                int i = hash((String) pool[slot - 1]) & mask;
+                while (symbolSlots[i] != 0)
+                    i = (i + 1) & mask;
+                symbolSlots[i] = slot;
+            }
+        }
+
+        private static int hash(CharSequence s) {
+            int h = 0;
+            for (int i = 0; i < s.length(); ++i)
+                h = 31 * h + s.charAt(i);
+            return h ^ (h >>> 16);
+        }
+    }
+}
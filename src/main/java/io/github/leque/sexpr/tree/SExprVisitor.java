@@ -0,0 +1,57 @@
+package io.github.leque.sexpr.tree;
+
+/**
+ * A visitor with one method per node type, called by {@link SExpr#accept(SExprVisitor)}.
+ * Methods that are not overridden return {@link #visitDefault(SExpr)}.
+ *
+ * @param <R> the result type
+ */
+public interface SExprVisitor<R> {
+    default R visitDefault(SExpr expr) {
+        return null;
+    }
+
+    default R visitBoolean(SExprs.BooleanValue expr) {
+        return visitDefault(expr);
+    }
+
+    default R visitCharacter(SExprs.CharacterValue expr) {
+        return visitDefault(expr);
+    }
+
+    default R visitNumber(SExprs.NumberValue expr) {
+        return visitDefault(expr);
+    }
+
+    default R visitInfinity(SExprs.InfinityValue expr) {
+        return visitDefault(expr);
+    }
+
+    default R visitNan(SExprs.NanValue expr) {
+        return visitDefault(expr);
+    }
+
+    default R visitString(SExprs.StringValue expr) {
+        return visitDefault(expr);
+    }
+
+    default R visitSymbol(SExprs.SymbolValue expr) {
+        return visitDefault(expr);
+    }
+
+    default R visitBytevector(SExprs.BytevectorValue expr) {
+        return visitDefault(expr);
+    }
+
+    default R visitList(SExprs.ListValue expr) {
+        return visitDefault(expr);
+    }
+
+    default R visitDottedList(SExprs.DottedListValue expr) {
+        return visitDefault(expr);
+    }
+
+    default R visitVector(SExprs.VectorValue expr) {
+        return visitDefault(expr);
+    }
+}
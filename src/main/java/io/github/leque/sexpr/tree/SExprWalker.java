@@ -0,0 +1,132 @@
+package io.github.leque.sexpr.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Traverses S-expressions with an explicit stack, so the depth of a tree is limited only by the heap.
+ */
+public class SExprWalker {
+    private SExprWalker() {
+    }
+
+    public enum Action {
+        CONTINUE,
+        /** Do not visit the children of the entered node. Its {@code leave} is still called. */
+        SKIP_CHILDREN,
+        /** Stop the traversal at once. */
+        TERMINATE,
+    }
+
+    public interface Listener {
+        /**
+         * Called before the children of {@code expr} are visited.
+         *
+         * @param depth the depth of {@code expr}, 0 for the root
+         */
+        default Action enter(SExpr expr, int depth) {
+            return Action.CONTINUE;
+        }
+
+        /**
+         * Called after the children of {@code expr} are visited.
+         * Returning anything but {@link Action#TERMINATE} continues the traversal.
+         */
+        default Action leave(SExpr expr, int depth) {
+            return Action.CONTINUE;
+        }
+    }
+
+    public interface Folder<R> {
+        R atom(SExpr expr);
+
+        /**
+         * Combines the results of the children of a list, a dotted list or a vector.
+         * The tail of a dotted list comes last.
+         */
+        R compound(SExpr expr, List<R> children);
+    }
+
+    /**
+     * Visits {@code root} and its descendants in depth-first order.
+     *
+     * @return {@code false} if the listener terminated the traversal
+     */
+    public static boolean walk(SExpr root, Listener listener) {
+        SExpr[] nodes = new SExpr[16];
+        int[] next = new int[16];
+        int sp = 0;
+        SExpr expr = root;
+        while (true) {
+            Action action = listener.enter(expr, sp);
+            if (action == Action.TERMINATE)
+                return false;
+            if (action == Action.CONTINUE && childCount(expr) > 0) {
+                if (sp == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, sp * 2);
+                    next = Arrays.copyOf(next, sp * 2);
+                }
+                nodes[sp] = expr;
+                next[sp] = 0;
+                sp++;
+            } else if (listener.leave(expr, sp) == Action.TERMINATE) {
+                return false;
+            }
+            while (true) {
+                if (sp == 0)
+                    return true;
+                SExpr parent = nodes[sp - 1];
+                int i = next[sp - 1];
+                if (i < childCount(parent)) {
+                    next[sp - 1] = i + 1;
+                    expr = child(parent, i);
+                    break;
+                }
+                nodes[--sp] = null;
+                if (listener.leave(parent, sp) == Action.TERMINATE)
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Computes a result for {@code root} bottom-up, from the results of its descendants.
+     */
+    public static <R> R fold(SExpr root, Folder<R> folder) {
+        List<R> results = new ArrayList<>();
+        walk(root, new Listener() {
+            @Override
+            public Action leave(SExpr expr, int depth) {
+                if (isCompound(expr)) {
+                    int n = childCount(expr);
+                    List<R> top = results.subList(results.size() - n, results.size());
+                    List<R> children = new ArrayList<>(top);
+                    top.clear();
+                    results.add(folder.compound(expr, children));
+                } else {
+                    results.add(folder.atom(expr));
+                }
+                return Action.CONTINUE;
+            }
+        });
+        return results.get(0);
+    }
+
+    private static boolean isCompound(SExpr expr) {
+        return expr.isList() || expr.isVector() || expr.isDottedList();
+    }
+
+    private static int childCount(SExpr expr) {
+        if (expr.isList() || expr.isVector())
+            return expr.elements().size();
+        if (expr.isDottedList())
+            return expr.elements().size() + 1;
+        return 0;
+    }
+
+    private static SExpr child(SExpr expr, int i) {
+        List<SExpr> elems = expr.elements();
+        return i < elems.size() ? elems.get(i) : expr.tail();
+    }
+}
@@ -0,0 +1,600 @@
+package io.github.leque.sexpr.tree;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes S-expressions in their external representation.
+ *
+ * <p>A writer formats into a reusable {@code char[]} chunk and hands full chunks to the destination,
+ * so writing allocates nothing per node except for flonums and exact decimals.
+ * Instances are not thread-safe but may be reused for any number of writes.
+ */
+public final class SExprWriter {
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final ThreadLocal<SExprWriter> CACHED = ThreadLocal.withInitial(SExprWriter::new);
+
+    private enum Mode {
+        STRING,
+        CHARS,
+        APPENDABLE,
+        UTF8_STREAM,
+        UTF8_BUFFER,
+        COUNT,
+    }
+
+    private final char[] chunk = new char[CHUNK_SIZE];
+    private final char[] digits = new char[20];
+    private char[] buf = chunk;
+    private int len;
+    private byte[] encoded;
+    private SExpr[] nodes = new SExpr[16];
+    private int[] next = new int[16];
+    private boolean busy;
+
+    private Mode mode;
+    private Appendable appendable;
+    private OutputStream stream;
+    private ByteBuffer bytes;
+    private long charCount;
+    private long utf8Count;
+
+    public SExprWriter() {
+    }
+
+    // a writer for SExpr.writeTo, or a fresh one if this thread is already writing
+    static SExprWriter forCurrentThread() {
+        SExprWriter writer = CACHED.get();
+        return writer.busy ? new SExprWriter() : writer;
+    }
+
+    public String writeToString(SExpr expr) {
+        try {
+            begin(Mode.STRING);
+            emit(expr);
+            return new String(buf, 0, len);
+        } catch (IOException e) {
+            throw new IllegalStateException("must not happen", e);
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Writes {@code expr} into {@code dest} from {@code offset}.
+     * Use {@link #writtenLength(SExpr)} to size the array.
+     *
+     * @return the number of chars written
+     * @throws IndexOutOfBoundsException if {@code dest} is too small
+     */
+    public int write(SExpr expr, char[] dest, int offset) {
+        if (offset < 0 || offset > dest.length)
+            throw new IndexOutOfBoundsException("offset " + offset + " out of bounds for length " + dest.length);
+        try {
+            begin(Mode.CHARS);
+            buf = dest;
+            len = offset;
+            emit(expr);
+            return len - offset;
+        } catch (IOException e) {
+            throw new IllegalStateException("must not happen", e);
+        } finally {
+            end();
+        }
+    }
+
+    public void write(SExpr expr, Appendable out) throws IOException {
+        try {
+            begin(Mode.APPENDABLE);
+            appendable = out;
+            emit(expr);
+            flush(true);
+        } finally {
+            end();
+        }
+    }
+
+    public void writeUtf8(SExpr expr, OutputStream out) throws IOException {
+        try {
+            begin(Mode.UTF8_STREAM);
+            stream = out;
+            emit(expr);
+            flush(true);
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Writes {@code expr} in UTF-8 into {@code out}.
+     * Use {@link #utf8Length(SExpr)} to size the buffer.
+     *
+     * @throws BufferOverflowException if {@code out} has not enough space remaining;
+     *                                 part of the representation may have been written
+     */
+    public void writeUtf8(SExpr expr, ByteBuffer out) {
+        try {
+            begin(Mode.UTF8_BUFFER);
+            bytes = out;
+            emit(expr);
+            flush(true);
+        } catch (IOException e) {
+            throw new IllegalStateException("must not happen", e);
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Returns the number of chars in the written representation of {@code expr}.
+     */
+    public long writtenLength(SExpr expr) {
+        count(expr);
+        return charCount;
+    }
+
+    /**
+     * Returns the number of bytes in the UTF-8 encoded representation of {@code expr}.
+     */
+    public long utf8Length(SExpr expr) {
+        count(expr);
+        return utf8Count;
+    }
+
+    private void count(SExpr expr) {
+        try {
+            begin(Mode.COUNT);
+            emit(expr);
+            flush(true);
+        } catch (IOException e) {
+            throw new IllegalStateException("must not happen", e);
+        } finally {
+            end();
+        }
+    }
+
+    private void begin(Mode mode) {
+        if (busy)
+            throw new IllegalStateException("writer is in use");
+        busy = true;
+        this.mode = mode;
+        charCount = 0;
+        utf8Count = 0;
+        len = 0;
+    }
+
+    private void end() {
+        busy = false;
+        appendable = null;
+        stream = null;
+        bytes = null;
+        if (buf.length > CHUNK_SIZE * 8 || mode == Mode.CHARS)
+            buf = chunk;
+        mode = null;
+        if (nodes.length > 1024)
+            nodes = new SExpr[16];
+        else
+            Arrays.fill(nodes, null);
+    }
+
+    // hands the chunk to the destination; keeps a trailing high surrogate unless the output is complete
+    private void flush(boolean complete) throws IOException {
+        if (mode == Mode.STRING) {
+            if (!complete)
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            return;
+        }
+        if (mode == Mode.CHARS) {
+            if (!complete)
+                throw new IndexOutOfBoundsException("destination too small");
+            return;
+        }
+        int n = len;
+        if (!complete && n > 0 && Character.isHighSurrogate(buf[n - 1]))
+            n--;
+        switch (mode) {
+            case APPENDABLE:
+                if (appendable instanceof Writer)
+                    ((Writer) appendable).write(buf, 0, n);
+                else if (appendable instanceof StringBuilder)
+                    ((StringBuilder) appendable).append(buf, 0, n);
+                else
+                    appendable.append(CharBuffer.wrap(buf, 0, n));
+                break;
+            case UTF8_STREAM: {
+                int k = encode(n);
+                stream.write(encoded, 0, k);
+                break;
+            }
+            case UTF8_BUFFER: {
+                int k = encode(n);
+                bytes.put(encoded, 0, k);
+                break;
+            }
+            case COUNT:
+                charCount += n;
+                utf8Count += utf8Length(n);
+                break;
+            default:
+                throw new IllegalStateException(mode.toString());
+        }
+        if (n < len)
+            buf[0] = buf[n];
+        len -= n;
+    }
+
+    // encodes buf[0, n) into encoded; unpaired surrogates become '?' like String.getBytes
+    private int encode(int n) {
+        if (encoded == null)
+            encoded = new byte[CHUNK_SIZE * 3];
+        byte[] out = encoded;
+        int k = 0;
+        for (int i = 0; i < n; ++i) {
+            char c = buf[i];
+            if (c < 0x80) {
+                out[k++] = (byte) c;
+            } else if (c < 0x800) {
+                out[k++] = (byte) (0xc0 | (c >> 6));
+                out[k++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(buf[i + 1])) {
+                int cp = Character.toCodePoint(c, buf[++i]);
+                out[k++] = (byte) (0xf0 | (cp >> 18));
+                out[k++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                out[k++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                out[k++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                out[k++] = '?';
+            } else {
+                out[k++] = (byte) (0xe0 | (c >> 12));
+                out[k++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[k++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return k;
+    }
+
+    private long utf8Length(int n) {
+        long k = 0;
+        for (int i = 0; i < n; ++i) {
+            char c = buf[i];
+            if (c < 0x80) {
+                k += 1;
+            } else if (c < 0x800) {
+                k += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(buf[i + 1])) {
+                k += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                k += 1;
+            } else {
+                k += 3;
+            }
+        }
+        return k;
+    }
+
+    private void put(char c) throws IOException {
+        if (len == buf.length)
+            flush(false);
+        buf[len++] = c;
+    }
+
+    private void put(String s) throws IOException {
+        int n = s.length();
+        if (buf.length - len >= n) {
+            s.getChars(0, n, buf, len);
+            len += n;
+        } else {
+            for (int i = 0; i < n; ++i)
+                put(s.charAt(i));
+        }
+    }
+
+    // writes lists, dotted lists and vectors with an explicit stack, so that deep nesting does not overflow
+    private void emit(SExpr root) throws IOException {
+        int sp = 0;
+        SExpr expr = root;
+        while (true) {
+            if (expr.isList() || expr.isDottedList() || expr.isVector()) {
+                String abbr = abbreviationOf(expr);
+                if (sp == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, sp * 2);
+                    next = Arrays.copyOf(next, sp * 2);
+                }
+                nodes[sp] = expr;
+                if (abbr != null) {
+                    put(abbr);
+                    next[sp] = 1;
+                } else {
+                    put(expr.isVector() ? "#(" : "(");
+                    next[sp] = 0;
+                }
+                sp++;
+            } else {
+                emitAtom(expr);
+            }
+            while (true) {
+                if (sp == 0)
+                    return;
+                SExpr parent = nodes[sp - 1];
+                List<SExpr> elems = parent.elements();
+                int i = next[sp - 1];
+                if (abbreviationOf(parent) != null) {
+                    if (i == 1) {
+                        next[sp - 1] = 2;
+                        expr = elems.get(1);
+                        break;
+                    }
+                } else if (i < elems.size()) {
+                    if (i > 0)
+                        put(' ');
+                    next[sp - 1] = i + 1;
+                    expr = elems.get(i);
+                    break;
+                } else if (i == elems.size() && parent.isDottedList()) {
+                    put(" . ");
+                    next[sp - 1] = i + 1;
+                    expr = parent.tail();
+                    break;
+                } else {
+                    put(')');
+                }
+                nodes[--sp] = null;
+            }
+        }
+    }
+
+    static String abbreviationOf(SExpr expr) {
+        if (!expr.isList())
+            return null;
+        List<SExpr> elems = expr.elements();
+        if (elems.size() != 2 || !elems.get(0).isSymbol())
+            return null;
+        switch (elems.get(0).symbolName()) {
+            case SExprs.QUOTE_NAME:
+                return "'";
+            case SExprs.QUASIQUOTE_NAME:
+                return "`";
+            case SExprs.UNQUOTE_NAME:
+                return ",";
+            case SExprs.UNQUOTE_SPLICING_NAME:
+                return ",@";
+            default:
+                return null;
+        }
+    }
+
+    private void emitAtom(SExpr expr) throws IOException {
+        if (expr.isBoolean()) {
+            put(expr.booleanValue() ? "#t" : "#f");
+        } else if (expr.isFixnum()) {
+            putLong(expr.longValue());
+        } else if (expr.isNumber()) {
+            put(((SExprs.NumberValue) expr).representation());
+        } else if (expr.isInfinity()) {
+            put(expr.doubleValue() < 0 ? "-inf.0" : "+inf.0");
+        } else if (expr.isNan()) {
+            put("+nan.0");
+        } else if (expr.isCharacter()) {
+            putCharacter(expr.codePoint());
+        } else if (expr.isString()) {
+            putQuoted(expr.stringValue(), '"');
+        } else if (expr.isSymbol()) {
+            String name = expr.symbolName();
+            if (isSimpleName(name))
+                put(name);
+            else
+                putQuoted(name, '|');
+        } else if (expr.isBytevector()) {
+            put("#u8(");
+            for (int i = 0, n = expr.bytevectorLength(); i < n; ++i) {
+                if (i > 0)
+                    put(' ');
+                putLong(expr.bytevectorRef(i));
+            }
+            put(')');
+        } else {
+            throw new IllegalArgumentException("unknown datum: " + expr.getClass());
+        }
+    }
+
+    private void putLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            put(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            put('-');
+            value = -value;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (i < digits.length)
+            put(digits[i++]);
+    }
+
+    private void putHex(int value) throws IOException {
+        int i = digits.length;
+        do {
+            digits[--i] = Character.forDigit(value & 0xf, 16);
+            value >>>= 4;
+        } while (value != 0);
+        while (i < digits.length)
+            put(digits[i++]);
+    }
+
+    private void putCharacter(int cp) throws IOException {
+        switch (cp) {
+            case '\u0007':
+                put("#\\alarm");
+                break;
+            case '\b':
+                put("#\\backspace");
+                break;
+            case '\u007f':
+                put("#\\delete");
+                break;
+            case '\u001b':
+                put("#\\escape");
+                break;
+            case '\n':
+                put("#\\newline");
+                break;
+            case '\u0000':
+                put("#\\null");
+                break;
+            case '\r':
+                put("#\\return");
+                break;
+            case ' ':
+                put("#\\space");
+                break;
+            case '\t':
+                put("#\\tab");
+                break;
+            default:
+                if (Character.isISOControl(cp)) {
+                    put("#\\x");
+                    putHex(cp);
+                } else {
+                    put("#\\");
+                    if (Character.isBmpCodePoint(cp)) {
+                        put((char) cp);
+                    } else {
+                        put(Character.highSurrogate(cp));
+                        put(Character.lowSurrogate(cp));
+                    }
+                }
+        }
+    }
+
+    private void putQuoted(String s, char quote) throws IOException {
+        put(quote);
+        for (int i = 0, n = s.length(); i < n; ++i) {
+            char c = s.charAt(i);
+            if (c == quote) {
+                put('\\');
+                put(quote);
+            } else if (c == '\\') {
+                put("\\\\");
+            } else if (Character.isISOControl(c)) {
+                put("\\x");
+                putHex(c);
+                put(';');
+            } else {
+                put(c);
+            }
+        }
+        put(quote);
+    }
+
+    private static boolean isSimpleName(String name) {
+        int len = name.length();
+        if (len == 0)
+            return false;
+
+        if (SExprs.isPositiveInf(name) || SExprs.isNegativeInf(name)
+                || SExprs.isPositiveNaN(name) || SExprs.isNegativeNaN(name)
+                || SExprs.isPositiveI(name) || SExprs.isNegativeI(name))
+            return false;
+
+        char c0 = name.charAt(0);
+        // : Initial Subsequent*
+        if (isInitial(c0))
+            return allSubsequent(name, 1);
+
+        if (isExplicitSign(c0)) {
+            // : ExplicitSign
+            if (len == 1)
+                return true;
+
+            // | ExplicitSign SignSubsequent Subsequent*
+            if (isSignSubsequent(name.charAt(1)))
+                return allSubsequent(name, 2);
+
+            // | ExplicitSign '.' DotSubsequent Subsequent*
+            if (len >= 3 && name.charAt(1) == '.' && isDotSubsequent(name.charAt(2)))
+                return allSubsequent(name, 3);
+
+            return false;
+        }
+
+        // | '.' DotSubsequent Subsequent*
+        if (c0 == '.' && len >= 2 && isDotSubsequent(name.charAt(1)))
+            return allSubsequent(name, 2);
+
+        return false;
+    }
+
+    private static boolean allSubsequent(String name, int start) {
+        for (int i = start; i < name.length(); ++i) {
+            if (isSubsequent(name.charAt(i)) == false)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isInitial(char c) {
+        return isLetter(c) || isSpecialInitial(c);
+    }
+
+    private static boolean isLetter(char c) {
+        return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return ('0' <= c && c <= '9');
+    }
+
+    private static boolean isSpecialInitial(char c) {
+        switch (c) {
+            case '!':
+            case '$':
+            case '%':
+            case '&':
+            case '*':
+            case '/':
+            case ':':
+            case '<':
+            case '=':
+            case '>':
+            case '?':
+            case '^':
+            case '_':
+            case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isExplicitSign(char c) {
+        return c == '+' || c == '-';
+    }
+
+    private static boolean isSpecialSubsequent(char c) {
+        return isExplicitSign(c) || c == '.' || c == '@';
+    }
+
+    private static boolean isSubsequent(char c) {
+        return isInitial(c) || isDigit(c) || isSpecialSubsequent(c);
+    }
+
+    private static boolean isDotSubsequent(char c) {
+        return isSignSubsequent(c) || c == '.';
+    }
+
+    private static boolean isSignSubsequent(char c) {
+        return isInitial(c) || isExplicitSign(c) || c == '@';
+    }
+}
@@ -2,12 +2,10 @@ package io.github.leque.sexpr.tree;
 
 import org.antlr.v4.runtime.misc.Pair;
 
-import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -25,25 +23,101 @@ public class SExprs {
     }
 
     public static SExpr characterValue(int codePoint) {
+        if (codePoint >= 0 && codePoint < ASCII_CHARACTERS.length)
+            return ASCII_CHARACTERS[codePoint];
         if (Character.isDefined(codePoint) == false)
             throw new IllegalArgumentException(String.format("argument out of range: 0x%x", codePoint));
         return new CharacterValue(codePoint);
     }
 
+    private static final CharacterValue[] ASCII_CHARACTERS = new CharacterValue[128];
+
+    static {
+        for (int i = 0; i < ASCII_CHARACTERS.length; ++i)
+            ASCII_CHARACTERS[i] = new CharacterValue(i);
+    }
+
+    /**
+     * Returns a fixnum.
+     * Fixnums from {@code -128} to {@code 1023} are shared; the bounds can be set with the system properties
+     * {@code io.github.leque.sexpr.tree.SExprs.fixnumCache.low} and {@code io.github.leque.sexpr.tree.SExprs.fixnumCache.high}.
+     */
     public static SExpr numberValue(long repr) {
-        return new NumberValue(BigDecimal.valueOf(repr));
+        return fixnum(repr);
+    }
+
+    // both bounds are clamped so that the cache never holds more than 2^24 + 1 fixnums
+    private static final int FIXNUM_CACHE_LOW = Math.max(-(1 << 24),
+            Math.min(0, Integer.getInteger("io.github.leque.sexpr.tree.SExprs.fixnumCache.low", -128)));
+
+    private static final int FIXNUM_CACHE_HIGH = (int) Math.max(0L,
+            Math.min(Integer.getInteger("io.github.leque.sexpr.tree.SExprs.fixnumCache.high", 1023), (1L << 24) + FIXNUM_CACHE_LOW));
+
+    private static final FixnumValue[] FIXNUMS = new FixnumValue[FIXNUM_CACHE_HIGH - FIXNUM_CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < FIXNUMS.length; ++i)
+            FIXNUMS[i] = new FixnumValue(i + FIXNUM_CACHE_LOW);
+    }
+
+    private static FixnumValue fixnum(long value) {
+        if (value >= FIXNUM_CACHE_LOW && value <= FIXNUM_CACHE_HIGH)
+            return FIXNUMS[(int) value - FIXNUM_CACHE_LOW];
+        return new FixnumValue(value);
     }
 
     public static SExpr numberValue(BigInteger i) {
-        return new NumberValue(new BigDecimal(i));
+        if (i.bitLength() < 64)
+            return fixnum(i.longValue());
+        return new DecimalValue(new BigDecimal(i));
     }
 
     public static SExpr numberValue(BigDecimal repr) {
-        return new NumberValue(repr);
+        return new DecimalValue(repr);
     }
 
+    /**
+     * Returns a number for a decimal representation.
+     * Integers that fit in a {@code long} become fixnums, and flonums with at most 15 significant digits
+     * become {@code double}-backed flonums, as do those that are written back the same way from their double.
+     * Other values keep an exact {@link BigDecimal}.
+     */
     public static SExpr numberValue(String repr) {
-        return new NumberValue(new BigDecimal(repr));
+        BigDecimal d = new BigDecimal(repr);
+        if (repr.indexOf('.') < 0 && repr.indexOf('e') < 0 && repr.indexOf('E') < 0) {
+            if (d.scale() == 0 && d.unscaledValue().bitLength() < 64)
+                return fixnum(d.longValue());
+        } else if (d.precision() <= MAX_EXACT_FLONUM_DIGITS
+                && Math.abs(d.precision() - d.scale()) <= MAX_EXACT_FLONUM_EXPONENT) {
+            return new FlonumValue(d.doubleValue());
+        } else if (isWrittenFlonum(d)) {
+            return new FlonumValue(d.doubleValue());
+        }
+        return new DecimalValue(d);
+    }
+
+    public static SExpr flonumValue(double repr) {
+        if (Double.isNaN(repr))
+            return nanValue();
+        if (Double.isInfinite(repr))
+            return repr < 0 ? negativeInfinityValue() : positiveInfinityValue();
+        return new FlonumValue(repr);
+    }
+
+    // decimals with at most this many significant digits round-trip through double
+    static final int MAX_EXACT_FLONUM_DIGITS = 15;
+
+    static final int MAX_EXACT_FLONUM_EXPONENT = 290;
+
+    // Double.toString writes no more significant digits than this, one more than needed before JDK 19
+    static final int MAX_WRITTEN_FLONUM_DIGITS = 18;
+
+    // whether a flonum holding the double nearest to d would be written as d, so that written flonums read back as flonums
+    static boolean isWrittenFlonum(BigDecimal d) {
+        if (d.precision() > MAX_WRITTEN_FLONUM_DIGITS)
+            return false;
+        double x = d.doubleValue();
+        return Double.isFinite(x) && BigDecimal.valueOf(x).compareTo(d) == 0;
     }
 
     public static SExpr negativeInfinityValue() {
@@ -70,12 +144,15 @@ public class SExprs {
         return new BytevectorValue(elems);
     }
 
+    private static final SExpr EMPTY_LIST = new ListValue(List.of(), false);
+    private static final SExpr EMPTY_VECTOR = new VectorValue(List.of(), false);
+
     public static SExpr listValue(List<SExpr> repr) {
-        return new ListValue(repr);
+        return repr.isEmpty() ? EMPTY_LIST : new ListValue(repr);
     }
 
     public static SExpr listValue(SExpr... reprs) {
-        return new ListValue(Arrays.asList(reprs));
+        return reprs.length == 0 ? EMPTY_LIST : new ListValue(Arrays.asList(reprs));
     }
 
     public static SExpr dottedListValue(List<SExpr> elems, SExpr end) {
@@ -83,16 +160,15 @@ public class SExprs {
             throw new IllegalArgumentException("dotted-list should have 2 or more elements");
         }
         if (end.isList()) {
-            List<SExpr> tail = end.getListElements().get();
+            List<SExpr> tail = end.elements();
             List<SExpr> es = new ArrayList<>(elems.size() + tail.size());
             es.addAll(elems);
             es.addAll(tail);
             return listValue(es);
         }
         if (end.isDottedList()) {
-            Pair<List<SExpr>, SExpr> p = end.getDottedListElements().get();
-            List<SExpr> tail = p.a;
-            SExpr last = p.b;
+            List<SExpr> tail = end.elements();
+            SExpr last = end.tail();
             List<SExpr> es = new ArrayList<>(elems.size() + tail.size());
             es.addAll(elems);
             es.addAll(tail);
@@ -110,11 +186,26 @@ public class SExprs {
     }
 
     public static SExpr vectorValue(List<SExpr> repr) {
-        return new VectorValue(repr);
+        return repr.isEmpty() ? EMPTY_VECTOR : new VectorValue(repr);
     }
 
     public static SExpr vectorValue(SExpr... reprs) {
-        return new VectorValue(Arrays.asList(reprs));
+        return reprs.length == 0 ? EMPTY_VECTOR : new VectorValue(Arrays.asList(reprs));
+    }
+
+    // the view factories wrap elems without copying, so it must be unmodifiable and must not contain null.
+    // dottedListView does not normalize, so end must be neither a list nor a dotted list.
+
+    static SExpr listView(List<SExpr> elems) {
+        return elems.isEmpty() ? EMPTY_LIST : new ListValue(elems, false);
+    }
+
+    static SExpr dottedListView(List<SExpr> elems, SExpr end) {
+        return new DottedListValue(elems, end, false);
+    }
+
+    static SExpr vectorView(List<SExpr> elems) {
+        return elems.isEmpty() ? EMPTY_VECTOR : new VectorValue(elems, false);
     }
 
     public static final String QUOTE_NAME = "quote";
@@ -125,6 +216,29 @@ public class SExprs {
 
     public static final String UNQUOTE_SPLICING_NAME = "unquote-splicing";
 
+    private static final SExpr QUOTE = new SymbolValue(QUOTE_NAME);
+    private static final SExpr QUASIQUOTE = new SymbolValue(QUASIQUOTE_NAME);
+    private static final SExpr UNQUOTE = new SymbolValue(UNQUOTE_NAME);
+    private static final SExpr UNQUOTE_SPLICING = new SymbolValue(UNQUOTE_SPLICING_NAME);
+
+    /**
+     * Returns the shared head symbol of an abbreviation, or a new symbol if {@code name} names no abbreviation.
+     */
+    static SExpr abbreviationSymbolValue(String name) {
+        switch (name) {
+            case QUOTE_NAME:
+                return QUOTE;
+            case QUASIQUOTE_NAME:
+                return QUASIQUOTE;
+            case UNQUOTE_NAME:
+                return UNQUOTE;
+            case UNQUOTE_SPLICING_NAME:
+                return UNQUOTE_SPLICING;
+            default:
+                return symbolValue(name);
+        }
+    }
+
     public static boolean isPositiveInf(String name) {
         return name.equalsIgnoreCase("+inf.0");
     }
@@ -153,55 +267,7 @@ public class SExprs {
         return name.equalsIgnoreCase("-i");
     }
 
-    private static void writeString(int[] codePoints, char quote, Appendable buffer) throws IOException {
-        buffer.append(quote);
-        for (int cp : codePoints) {
-            if (cp == quote) {
-                buffer.append("\\");
-                buffer.append(quote);
-            } else if (cp == '\\') {
-                buffer.append("\\\\");
-            } else if (Character.isISOControl(cp)) {
-                buffer.append(String.format("\\x%x;", cp));
-            } else {
-                switch (cp) {
-                    case '\u0007':
-                        buffer.append("\\a");
-                        break;
-                    case '\b':
-                        buffer.append("\\b");
-                        break;
-                    case '\t':
-                        buffer.append("\\t");
-                        break;
-                    case '\n':
-                        buffer.append("\\n");
-                        break;
-                    case '\r':
-                        buffer.append("\\r");
-                        break;
-                    default:
-                        char[] cs = Character.toChars(cp);
-                        buffer.append(new String(cs, 0, cs.length));
-                        break;
-                }
-            }
-        }
-        buffer.append(quote);
-    }
-
-    private static void writeSeq(List<SExpr> elems, String open, String close, Appendable buffer) throws IOException {
-        buffer.append(open);
-        String sep = "";
-        for (SExpr elem : elems) {
-            buffer.append(sep);
-            elem.writeTo(buffer);
-            sep = " ";
-        }
-        buffer.append(close);
-    }
-
-    enum BooleanValue implements SExpr {
+    public enum BooleanValue implements SExpr {
         TRUE(true),
         FALSE(false);
 
@@ -224,23 +290,26 @@ public class SExprs {
         }
 
         @Override
-        public String toString() {
-            return this.toWrittenString();
+        public boolean booleanValue() {
+            return value;
         }
 
         @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            buffer.append(this.value ? "#t" : "#f");
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitBoolean(this);
+        }
+
+        @Override
+        public String toString() {
+            return this.toWrittenString();
         }
     }
 
-    public static class CharacterValue implements SExpr {
+    public static final class CharacterValue implements SExpr {
         private final int value;
-        private final Optional<Integer> repr;
 
         private CharacterValue(int value) {
             this.value = value;
-            this.repr = Optional.of(value);
         }
 
         @Override
@@ -250,7 +319,17 @@ public class SExprs {
 
         @Override
         public Optional<Integer> getCharacterCodePoint() {
-            return repr;
+            return Optional.of(value);
+        }
+
+        @Override
+        public int codePoint() {
+            return value;
+        }
+
+        @Override
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitCharacter(this);
         }
 
         @Override
@@ -263,60 +342,23 @@ public class SExprs {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             CharacterValue that = (CharacterValue) o;
-            return Objects.equals(repr, that.repr);
+            return value == that.value;
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(repr);
+            return Integer.hashCode(value);
         }
+    }
 
-        @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            switch (this.value) {
-                case '\u0007':
-                    buffer.append("#\\alarm");
-                    break;
-                case '\b':
-                    buffer.append("#\\backspace");
-                    break;
-                case '\u007f':
-                    buffer.append("#\\delete");
-                    break;
-                case '\u001b':
-                    buffer.append("#\\escape");
-                    break;
-                case '\n':
-                    buffer.append("#\\newline");
-                    break;
-                case '\u0000':
-                    buffer.append("#\\null");
-                    break;
-                case '\r':
-                    buffer.append("#\\return");
-                    break;
-                case '\u0020':
-                    buffer.append("#\\space");
-                    break;
-                case '\t':
-                    buffer.append("#\\tab");
-                    break;
-                default:
-                    if (Character.isISOControl(this.value)) {
-                        buffer.append(String.format("#\\x%x", this.value));
-                    } else {
-                        buffer.append("#\\x" + new String(Character.toChars(this.value)));
-                    }
-            }
+    public abstract static sealed class NumberValue implements SExpr
+            permits FixnumValue, FlonumValue, DecimalValue {
+        NumberValue() {
         }
-    }
 
-    public static class NumberValue implements SExpr {
-        private final Optional<BigDecimal> repr;
+        abstract BigDecimal toBigDecimal();
 
-        private NumberValue(BigDecimal repr) {
-            this.repr = Optional.of(repr);
-        }
+        abstract String representation();
 
         @Override
         public boolean isNumber() {
@@ -325,7 +367,17 @@ public class SExprs {
 
         @Override
         public Optional<BigDecimal> getNumberValue() {
-            return this.repr;
+            return Optional.of(toBigDecimal());
+        }
+
+        @Override
+        public double doubleValue() {
+            return toBigDecimal().doubleValue();
+        }
+
+        @Override
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitNumber(this);
         }
 
         @Override
@@ -333,26 +385,153 @@ public class SExprs {
             return this.toWrittenString();
         }
 
+        // numbers are equal if they have the same exact value, regardless of their representation,
+        // where a flonum stands for the exact value of its double rather than its shortest decimal form
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
+            if (!(o instanceof NumberValue)) return false;
             NumberValue that = (NumberValue) o;
-            return this.repr.get().compareTo(that.repr.get()) == 0;
+            if (this.isFixnum() && that.isFixnum())
+                return this.longValue() == that.longValue();
+            if (this.isFlonum() && that.isFlonum())
+                return this.doubleValue() == that.doubleValue();
+            if (this.isFixnum() && that.isFlonum())
+                return fixnumEqualsFlonum(this.longValue(), that.doubleValue());
+            if (this.isFlonum() && that.isFixnum())
+                return fixnumEqualsFlonum(that.longValue(), this.doubleValue());
+            return this.exactValue().compareTo(that.exactValue()) == 0;
+        }
+
+        private BigDecimal exactValue() {
+            return this.isFlonum() ? new BigDecimal(this.doubleValue()) : this.toBigDecimal();
+        }
+
+        private static boolean fixnumEqualsFlonum(long l, double d) {
+            return isLongValued(d) && (long) d == l;
+        }
+
+        static boolean isLongValued(double d) {
+            return d == Math.rint(d) && d >= -0x1p63 && d < 0x1p63;
+        }
+
+        // integral values hash as longs, others as doubles, so that equal numbers hash alike
+        static int hashLong(long value) {
+            return Long.hashCode(value);
+        }
+
+        static int hashDouble(double value) {
+            return isLongValued(value) ? Long.hashCode((long) value) : Double.hashCode(value);
+        }
+    }
+
+    public static final class FixnumValue extends NumberValue {
+        private final long value;
+
+        private FixnumValue(long value) {
+            this.value = value;
+        }
+
+        @Override
+        BigDecimal toBigDecimal() {
+            return BigDecimal.valueOf(value);
+        }
+
+        @Override
+        public boolean isFixnum() {
+            return true;
+        }
+
+        @Override
+        public long longValue() {
+            return value;
+        }
+
+        @Override
+        public double doubleValue() {
+            return value;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashLong(value);
+        }
+
+        @Override
+        String representation() {
+            return Long.toString(value);
+        }
+    }
+
+    public static final class FlonumValue extends NumberValue {
+        private final double value;
+
+        private FlonumValue(double value) {
+            this.value = value;
+        }
+
+        @Override
+        BigDecimal toBigDecimal() {
+            return BigDecimal.valueOf(value);
+        }
+
+        @Override
+        public boolean isFlonum() {
+            return true;
+        }
+
+        @Override
+        public double doubleValue() {
+            return value;
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(repr);
+            return hashDouble(value);
         }
 
         @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            buffer.append(repr.get().toString());
+        String representation() {
+            String repr = Double.toString(value);
+            // Flonum has no signed exponent
+            if (repr.indexOf("E-") >= 0)
+                repr = BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+            return repr;
         }
     }
 
-    enum InfinityValue implements SExpr {
+    public static final class DecimalValue extends NumberValue {
+        private final BigDecimal value;
+
+        private DecimalValue(BigDecimal value) {
+            this.value = value;
+        }
+
+        @Override
+        BigDecimal toBigDecimal() {
+            return value;
+        }
+
+        @Override
+        public int hashCode() {
+            BigDecimal v = value.stripTrailingZeros();
+            if (v.scale() <= 0 && v.precision() - v.scale() <= 19) {
+                try {
+                    return hashLong(v.longValueExact());
+                } catch (ArithmeticException e) {
+                    // out of long range
+                }
+            }
+            return hashDouble(value.doubleValue());
+        }
+
+        @Override
+        String representation() {
+            return value.toString();
+        }
+    }
+
+    public enum InfinityValue implements SExpr {
         NEGATIVE(Double.NEGATIVE_INFINITY),
         POSITIVE(Double.POSITIVE_INFINITY);
 
@@ -375,20 +554,22 @@ public class SExprs {
         }
 
         @Override
-        public String toString() {
-            return this.toWrittenString();
+        public double doubleValue() {
+            return this.value;
         }
 
         @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            if (this.value < 0)
-                buffer.append("-inf.0");
-            else
-                buffer.append("+inf.0");
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitInfinity(this);
+        }
+
+        @Override
+        public String toString() {
+            return this.toWrittenString();
         }
     }
 
-    enum NanValue implements SExpr {
+    public enum NanValue implements SExpr {
         INSTANCE;
 
         private Optional<Double> repr;
@@ -408,21 +589,26 @@ public class SExprs {
         }
 
         @Override
-        public String toString() {
-            return this.toWrittenString();
+        public double doubleValue() {
+            return Double.NaN;
+        }
+
+        @Override
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitNan(this);
         }
 
         @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            buffer.append("+nan.0");
+        public String toString() {
+            return this.toWrittenString();
         }
     }
 
-    public static class StringValue implements SExpr {
-        private final Optional<String> repr;
+    public static final class StringValue implements SExpr {
+        private final String value;
 
         private StringValue(String s) {
-            this.repr = Optional.of(s);
+            this.value = Objects.requireNonNull(s);
         }
 
         @Override
@@ -432,7 +618,17 @@ public class SExprs {
 
         @Override
         public Optional<String> getStringValue() {
-            return this.repr;
+            return Optional.of(value);
+        }
+
+        @Override
+        public String stringValue() {
+            return value;
+        }
+
+        @Override
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitString(this);
         }
 
         @Override
@@ -445,25 +641,20 @@ public class SExprs {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             StringValue that = (StringValue) o;
-            return Objects.equals(repr, that.repr);
+            return value.equals(that.value);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(repr);
-        }
-
-        @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            writeString(repr.get().codePoints().toArray(), '"', buffer);
+            return value.hashCode();
         }
     }
 
-    public static class SymbolValue implements SExpr {
-        private final Optional<String> repr;
+    public static final class SymbolValue implements SExpr {
+        private final String name;
 
         private SymbolValue(String s) {
-            this.repr = Optional.of(s);
+            this.name = Objects.requireNonNull(s);
         }
 
         @Override
@@ -473,7 +664,17 @@ public class SExprs {
 
         @Override
         public Optional<String> getSymbolName() {
-            return this.repr;
+            return Optional.of(name);
+        }
+
+        @Override
+        public String symbolName() {
+            return name;
+        }
+
+        @Override
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitSymbol(this);
         }
 
         @Override
@@ -486,133 +687,20 @@ public class SExprs {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             SymbolValue that = (SymbolValue) o;
-            return Objects.equals(repr, that.repr);
+            return name.equals(that.name);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(repr);
-        }
-
-
-        @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            String name = repr.get();
-            int[] codePoints = name.codePoints().toArray();
-            if (isSimpleName(name, codePoints)) {
-                buffer.append(name);
-            } else {
-                writeString(codePoints, '|', buffer);
-            }
-        }
-
-        private boolean isSimpleName(String name, int[] codePoints) {
-            int len = codePoints.length;
-            if (len == 0)
-                return false;
-
-            if (isPositiveInf(name) || isNegativeInf(name)
-                    || isPositiveNaN(name) || isNegativeNaN(name)
-                    || isPositiveI(name) || isNegativeI(name))
-                return false;
-
-            // : Initial Subsequent*
-            if (isInitial(codePoints[0]))
-                return allSubsequent(codePoints, 1);
-
-            if (isExplicitSign(codePoints[0])) {
-                // : ExplicitSign
-                if (len == 1)
-                    return true;
-
-                // | ExplicitSign SignSubsequent Subsequent*
-                if (isSignSubsequent(codePoints[1]))
-                    return allSubsequent(codePoints, 2);
-
-                // | ExplicitSign '.' DotSubsequent Subsequent*
-                if (len >= 3 && codePoints[1] == '.' && isDotSubsequent(codePoints[2]))
-                    return allSubsequent(codePoints, 3);
-
-                return false;
-            }
-
-            // | '.' DotSubsequent Subsequent*
-            if (codePoints[0] == '.' && len >= 2 && isDotSubsequent(codePoints[1]))
-                return allSubsequent(codePoints, 2);
-
-            return false;
-        }
-
-        private boolean allSubsequent(int[] codePoints, int start) {
-            for (int i = start; i < codePoints.length; ++i) {
-                if (isSubsequent(codePoints[i]) == false)
-                    return false;
-            }
-            return true;
-        }
-
-        private boolean isInitial(int cp) {
-            return isLetter(cp) || isSpecialInitial(cp);
-        }
-
-        private boolean isLetter(int cp) {
-            return ('a' <= cp && cp <= 'z') || ('A' <= cp && cp <= 'Z');
-        }
-
-        private boolean isDigit(int cp) {
-            return ('0' <= cp && cp <= '9');
-        }
-
-        private boolean isSpecialInitial(int cp) {
-            switch (cp) {
-                case '!':
-                case '$':
-                case '%':
-                case '&':
-                case '*':
-                case '/':
-                case ':':
-                case '<':
-                case '=':
-                case '>':
-                case '?':
-                case '^':
-                case '_':
-                case '~':
-                    return true;
-                default:
-                    return false;
-            }
-        }
-
-        private boolean isExplicitSign(int cp) {
-            return cp == '+' || cp == '-';
-        }
-
-        private boolean isSpecialSubsequent(int cp) {
-            return isExplicitSign(cp) || cp == '.' || cp == '@';
-        }
-
-        private boolean isSubsequent(int cp) {
-            return isInitial(cp) || isDigit(cp) || isSpecialSubsequent(cp);
-        }
-
-        private boolean isDotSubsequent(int cp) {
-            return isSignSubsequent(cp) || cp == '.';
-        }
-
-        private boolean isSignSubsequent(int cp) {
-            return isInitial(cp) || isExplicitSign(cp) || cp == '@';
+            return name.hashCode();
         }
     }
 
-    public static class BytevectorValue implements SExpr {
-        private final Optional<byte[]> repr;
+    public static final class BytevectorValue implements SExpr {
         private final byte[] value;
 
         private BytevectorValue(byte[] value) {
             this.value = value;
-            this.repr = Optional.of(value);
         }
 
         @Override
@@ -622,7 +710,22 @@ public class SExprs {
 
         @Override
         public Optional<byte[]> getBytevectorElements() {
-            return repr;
+            return Optional.of(value);
+        }
+
+        @Override
+        public int bytevectorLength() {
+            return value.length;
+        }
+
+        @Override
+        public int bytevectorRef(int index) {
+            return value[index] - Byte.MIN_VALUE;
+        }
+
+        @Override
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitBytevector(this);
         }
 
         @Override
@@ -642,35 +745,31 @@ public class SExprs {
         public int hashCode() {
             return Arrays.hashCode(value);
         }
-
-        @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            buffer.append("#u8(");
-            String sep = "";
-            for (byte b : this.repr.get()) {
-                buffer.append(sep);
-                buffer.append(String.format("%d", (int)b - Byte.MIN_VALUE));
-                sep = " ";
-            }
-            buffer.append(")");
-        }
     }
 
-    public static class ListValue implements SExpr {
-        private final Optional<List<SExpr>> repr;
-
-        private ListValue(List<SExpr> elems) {
-            this.repr = Optional.of(Collections.unmodifiableList(elems));
-        }
-
-        @Override
-        public boolean isList() {
-            return true;
+    /**
+     * A list, a dotted list or a vector.
+     *
+     * <p>The hash code of a node is computed once, and the hash codes of its descendants along with it.
+     * Both {@link #hashCode()} and {@link #equals(Object)} traverse nodes with an explicit stack,
+     * and {@code equals} fails fast when the hash codes of two nodes are already known to differ.
+     */
+    public abstract static sealed class CompoundValue implements SExpr
+            permits ListValue, DottedListValue, VectorValue {
+        final List<SExpr> elements;
+        // the tail of a dotted list, or null
+        final SExpr end;
+        // the hash code, or 0 if it is not computed yet
+        private int hash;
+
+        CompoundValue(List<SExpr> elems, SExpr end, boolean copy) {
+            this.elements = copy ? List.copyOf(elems) : elems;
+            this.end = end;
         }
 
         @Override
-        public Optional<List<SExpr>> getListElements() {
-            return this.repr;
+        public List<SExpr> elements() {
+            return elements;
         }
 
         @Override
@@ -678,138 +777,216 @@ public class SExprs {
             return this.toWrittenString();
         }
 
+        // the same as List.hashCode() of the elements, followed by the tail of a dotted list
         @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            ListValue listValue = (ListValue) o;
-            return Objects.equals(repr, listValue.repr);
+        public final int hashCode() {
+            int h = hash;
+            if (h != 0)
+                return h;
+            // children whose hash codes are known need no stack, as when a tree is built bottom-up
+            h = 1;
+            for (int i = 0, n = elements.size(); i <= n; ++i) {
+                SExpr child = i < n ? elements.get(i) : end;
+                if (child == null)
+                    break;
+                if (child instanceof CompoundValue c && c.hash == 0)
+                    return deepHashCode();
+                h = 31 * h + child.hashCode();
+            }
+            hash = h;
+            return h;
+        }
+
+        private int deepHashCode() {
+            CompoundValue[] nodes = new CompoundValue[16];
+            int[] next = new int[16];
+            int[] hashes = new int[16];
+            int sp = 0;
+            nodes[sp] = this;
+            hashes[sp] = 1;
+            sp++;
+            descend:
+            while (true) {
+                CompoundValue node = nodes[sp - 1];
+                List<SExpr> elems = node.elements;
+                int n = elems.size();
+                int acc = hashes[sp - 1];
+                for (int i = next[sp - 1]; i <= n; ++i) {
+                    SExpr child = i < n ? elems.get(i) : node.end;
+                    if (child == null)
+                        break;
+                    if (child instanceof CompoundValue c && c.hash == 0) {
+                        hashes[sp - 1] = acc;
+                        next[sp - 1] = i + 1;
+                        if (sp == nodes.length) {
+                            nodes = Arrays.copyOf(nodes, sp * 2);
+                            next = Arrays.copyOf(next, sp * 2);
+                            hashes = Arrays.copyOf(hashes, sp * 2);
+                        }
+                        nodes[sp] = c;
+                        next[sp] = 0;
+                        hashes[sp] = 1;
+                        sp++;
+                        continue descend;
+                    }
+                    acc = 31 * acc + child.hashCode();
+                }
+                node.hash = acc;
+                nodes[--sp] = null;
+                if (sp == 0)
+                    return acc;
+                // the parent has moved past this node, so add its hash
+                hashes[sp - 1] = 31 * hashes[sp - 1] + acc;
+            }
         }
 
         @Override
-        public int hashCode() {
-            return Objects.hash(repr);
+        public final boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CompoundValue that) || !shallowEquals(this, that)) return false;
+            // shared children and atoms need no stack, as when both trees are hash-consed
+            List<SExpr> ys = that.elements;
+            for (int i = 0, n = elements.size(); i <= n; ++i) {
+                SExpr x = i < n ? elements.get(i) : end;
+                SExpr y = i < n ? ys.get(i) : that.end;
+                if (x == y)
+                    continue;
+                if (x instanceof CompoundValue && y instanceof CompoundValue)
+                    return deepEquals(this, that, i);
+                if (!x.equals(y))
+                    return false;
+            }
+            return true;
         }
 
-        @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            List<SExpr> elems = repr.get();
-            if (elems.size() == 2 && elems.get(0).isSymbol()) {
-                String abbr = null;
-                switch (elems.get(0).getSymbolName().get()) {
-                    case QUOTE_NAME:
-                        abbr = "'";
-                        break;
-                    case QUASIQUOTE_NAME:
-                        abbr = "`";
-                        break;
-                    case UNQUOTE_NAME:
-                        abbr = ",";
-                        break;
-                    case UNQUOTE_SPLICING_NAME:
-                        abbr = ",@";
-                        break;
-                }
-                if (abbr != null) {
-                    writeAbbreviation(abbr, elems.get(1), buffer);
-                    return;
+        private static boolean deepEquals(CompoundValue self, CompoundValue that, int start) {
+            CompoundValue[] lefts = new CompoundValue[16];
+            CompoundValue[] rights = new CompoundValue[16];
+            int[] next = new int[16];
+            int sp = 0;
+            lefts[sp] = self;
+            rights[sp] = that;
+            next[sp] = start;
+            sp++;
+            descend:
+            while (sp > 0) {
+                CompoundValue left = lefts[sp - 1];
+                CompoundValue right = rights[sp - 1];
+                List<SExpr> xs = left.elements;
+                List<SExpr> ys = right.elements;
+                int n = xs.size();
+                for (int i = next[sp - 1]; i <= n; ++i) {
+                    SExpr x = i < n ? xs.get(i) : left.end;
+                    SExpr y = i < n ? ys.get(i) : right.end;
+                    if (x == y)
+                        continue;
+                    if (x instanceof CompoundValue cx && y instanceof CompoundValue cy) {
+                        if (!shallowEquals(cx, cy))
+                            return false;
+                        next[sp - 1] = i + 1;
+                        if (sp == lefts.length) {
+                            lefts = Arrays.copyOf(lefts, sp * 2);
+                            rights = Arrays.copyOf(rights, sp * 2);
+                            next = Arrays.copyOf(next, sp * 2);
+                        }
+                        lefts[sp] = cx;
+                        rights[sp] = cy;
+                        next[sp] = 0;
+                        sp++;
+                        continue descend;
+                    }
+                    if (!x.equals(y))
+                        return false;
                 }
+                lefts[--sp] = null;
+                rights[sp] = null;
             }
-            writeSeq(elems, "(", ")", buffer);
+            return true;
         }
 
-        private void writeAbbreviation(String abbreviation, SExpr elem, Appendable buffer) throws IOException {
-            buffer.append(abbreviation);
-            elem.writeTo(buffer);
+        private static boolean shallowEquals(CompoundValue x, CompoundValue y) {
+            return x.getClass() == y.getClass() && x.elements.size() == y.elements.size()
+                    && (x.hash == 0 || y.hash == 0 || x.hash == y.hash);
         }
     }
 
-    public static class DottedListValue implements SExpr {
-        private final List<SExpr> elements;
-        private final SExpr end;
-        private final Optional<Pair<List<SExpr>, SExpr>> repr;
+    public static final class ListValue extends CompoundValue {
+        private ListValue(List<SExpr> elems) {
+            this(elems, true);
+        }
 
-        private DottedListValue(List<SExpr> elems, SExpr end) {
-            this.elements = Collections.unmodifiableList(elems);
-            this.end = end;
-            this.repr = Optional.of(new Pair(this.elements, this.end));
+        private ListValue(List<SExpr> elems, boolean copy) {
+            super(elems, null, copy);
         }
 
         @Override
-        public boolean isDottedList() {
+        public boolean isList() {
             return true;
         }
 
         @Override
-        public Optional<Pair<List<SExpr>, SExpr>> getDottedListElements() {
-            return repr;
+        public Optional<List<SExpr>> getListElements() {
+            return Optional.of(elements);
         }
 
         @Override
-        public String toString() {
-            return this.toWrittenString();
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitList(this);
         }
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            DottedListValue that = (DottedListValue) o;
-            return Objects.equals(repr, that.repr);
+    public static final class DottedListValue extends CompoundValue {
+        private DottedListValue(List<SExpr> elems, SExpr end) {
+            this(elems, end, true);
         }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(repr);
+        private DottedListValue(List<SExpr> elems, SExpr end, boolean copy) {
+            super(elems, Objects.requireNonNull(end), copy);
         }
 
         @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            writeSeq(this.elements, "(", "", buffer);
-            buffer.append(" . ");
-            end.writeTo(buffer);
-            buffer.append(")");
+        public boolean isDottedList() {
+            return true;
         }
-    }
-
-    public static class VectorValue implements SExpr {
-        private final Optional<List<SExpr>> repr;
 
-        private VectorValue(List<SExpr> elems) {
-            this.repr = Optional.of(Collections.unmodifiableList(elems));
+        @Override
+        public Optional<Pair<List<SExpr>, SExpr>> getDottedListElements() {
+            return Optional.of(new Pair<>(elements, end));
         }
 
         @Override
-        public boolean isVector() {
-            return true;
+        public SExpr tail() {
+            return end;
         }
 
         @Override
-        public Optional<List<SExpr>> getVectorElements() {
-            return this.repr;
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitDottedList(this);
         }
+    }
 
-        @Override
-        public String toString() {
-            return this.toWrittenString();
+    public static final class VectorValue extends CompoundValue {
+        private VectorValue(List<SExpr> elems) {
+            this(elems, true);
+        }
+
+        private VectorValue(List<SExpr> elems, boolean copy) {
+            super(elems, null, copy);
         }
 
         @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            VectorValue that = (VectorValue) o;
-            return Objects.equals(repr, that.repr);
+        public boolean isVector() {
+            return true;
         }
 
         @Override
-        public int hashCode() {
-            return Objects.hash(repr);
+        public Optional<List<SExpr>> getVectorElements() {
+            return Optional.of(elements);
         }
 
         @Override
-        public void writeTo(Appendable buffer) throws IOException {
-            writeSeq(repr.get(), "#(", ")", buffer);
+        public <R> R accept(SExprVisitor<R> visitor) {
+            return visitor.visitVector(this);
         }
     }
 }
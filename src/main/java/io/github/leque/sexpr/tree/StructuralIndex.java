@@ -0,0 +1,279 @@
+package io.github.leque.sexpr.tree;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The offsets of the parentheses of UTF-8 encoded S-expressions, with the matching one of each.
+ *
+ * <p>Parentheses in strings, escaped symbols, character literals and comments are not included,
+ * while those of datum comments are, as they still have to balance.
+ * All of these delimiters are ASCII, and no byte of a multibyte UTF-8 sequence is,
+ * so the input is scanned as bytes without decoding.
+ * The scanner examines eight bytes at a time, finding the next byte of interest with
+ * word-wide comparisons, and only looks at bytes one by one around delimiters.
+ *
+ * <p>Quotes, bars, backslashes, semicolons and sharp signs are classified while scanning, but only
+ * parentheses are kept, as they are all that is needed to find datum boundaries without reading.
+ * {@link SExprParser#parseAllParallel(byte[])} uses the index to split its input.
+ * {@link SExprReader#skip()} does not, as the reader works on chars decoded from a stream,
+ * whose byte offsets it does not know.
+ */
+public final class StructuralIndex {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private final int size;
+    private final int[] offsets;
+    private final boolean[] opens;
+    private final int[] matches;
+
+    private StructuralIndex(int size, int[] offsets, boolean[] opens, int[] matches) {
+        this.size = size;
+        this.offsets = offsets;
+        this.opens = opens;
+        this.matches = matches;
+    }
+
+    public static StructuralIndex of(byte[] input) {
+        return of(input, 0, input.length);
+    }
+
+    /**
+     * Indexes {@code input[from..to)}, which must start outside of strings and comments.
+     */
+    public static StructuralIndex of(byte[] input, int from, int to) {
+        return new Scanner(input, from, to, true).scan();
+    }
+
+    // looks at every byte, as a reference for the word-at-a-time scanner
+    static StructuralIndex ofScalar(byte[] input, int from, int to) {
+        return new Scanner(input, from, to, false).scan();
+    }
+
+    /**
+     * Returns the number of parentheses.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the offset of the {@code i}-th parenthesis in the input.
+     */
+    public int offset(int i) {
+        return offsets[checkIndex(i)];
+    }
+
+    public boolean isOpen(int i) {
+        return opens[checkIndex(i)];
+    }
+
+    /**
+     * Returns the index of the parenthesis matching the {@code i}-th, or -1 if it is unbalanced.
+     */
+    public int match(int i) {
+        return matches[checkIndex(i)];
+    }
+
+    /**
+     * Returns the index of the parenthesis at {@code offset} in the input, or -1 if there is none.
+     */
+    public int indexOf(int offset) {
+        int i = Arrays.binarySearch(offsets, 0, size, offset);
+        return i >= 0 ? i : -1;
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("index " + i + " out of bounds for length " + size);
+        return i;
+    }
+
+    private static final class Scanner {
+        private final byte[] input;
+        private final int to;
+        private final boolean wordwise;
+        private int pos;
+        // the delimiters found in the word at maskBase
+        private int maskBase = Integer.MIN_VALUE;
+        private long mask;
+
+        private int size;
+        private int[] offsets = new int[64];
+        private boolean[] opens = new boolean[64];
+        private int[] matches = new int[64];
+        private int[] stack = new int[16];
+        private int sp;
+
+        Scanner(byte[] input, int from, int to, boolean wordwise) {
+            if (from < 0 || from > to || to > input.length)
+                throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") out of bounds for length " + input.length);
+            this.input = input;
+            this.pos = from;
+            this.to = to;
+            this.wordwise = wordwise;
+        }
+
+        StructuralIndex scan() {
+            while ((pos = nextDelimiter(pos)) < to) {
+                byte c = input[pos];
+                switch (c) {
+                    case '(':
+                        add(true);
+                        pos++;
+                        break;
+                    case ')':
+                        add(false);
+                        pos++;
+                        break;
+                    case '"':
+                    case '|':
+                        pos = skipQuoted(pos + 1, c);
+                        break;
+                    case ';':
+                        pos = next(pos + 1, '\n', '\r');
+                        break;
+                    default:
+                        // '#'
+                        if (pos + 1 < to && input[pos + 1] == '|')
+                            pos = skipBlockComment(pos + 2);
+                        else if (pos + 1 < to && input[pos + 1] == '\\')
+                            // the character after #\ may be a delimiter, as in #\(
+                            pos = Math.min(pos + 3, to);
+                        else if (pos + 1 < to && input[pos + 1] == ';')
+                            // a datum comment, not a line comment
+                            pos += 2;
+                        else
+                            pos++;
+                        break;
+                }
+            }
+            while (sp > 0)
+                matches[stack[--sp]] = -1;
+            return new StructuralIndex(size, offsets, opens, matches);
+        }
+
+        private void add(boolean open) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                opens = Arrays.copyOf(opens, size * 2);
+                matches = Arrays.copyOf(matches, size * 2);
+            }
+            int i = size++;
+            offsets[i] = pos;
+            opens[i] = open;
+            if (open) {
+                if (sp == stack.length)
+                    stack = Arrays.copyOf(stack, sp * 2);
+                stack[sp++] = i;
+            } else if (sp > 0) {
+                int j = stack[--sp];
+                matches[i] = j;
+                matches[j] = i;
+            } else {
+                matches[i] = -1;
+            }
+        }
+
+        private int skipQuoted(int p, byte quote) {
+            while ((p = next(p, quote, '\\')) < to) {
+                if (input[p] == quote)
+                    return p + 1;
+                p += 2;
+            }
+            return to;
+        }
+
+        private int skipBlockComment(int p) {
+            int depth = 1;
+            while ((p = next(p, '|', '#')) < to) {
+                if (p + 1 >= to)
+                    return to;
+                if (input[p] == '|' && input[p + 1] == '#') {
+                    p += 2;
+                    if (--depth == 0)
+                        return p;
+                } else if (input[p] == '#' && input[p + 1] == '|') {
+                    p += 2;
+                    depth++;
+                } else {
+                    p++;
+                }
+            }
+            return to;
+        }
+
+        // the offset of the next byte from p that is one of ( ) " | ; #, or to if there is none
+        private int nextDelimiter(int p) {
+            if (wordwise) {
+                // delimiters are often close together, so reuse the mask of the last word while p is in it
+                if (p >= maskBase && p < maskBase + Long.BYTES) {
+                    long m = mask & (-1L << ((p - maskBase) << 3));
+                    if (m != 0)
+                        return maskBase + (Long.numberOfTrailingZeros(m) >>> 3);
+                    p = maskBase + Long.BYTES;
+                }
+                for (; p + Long.BYTES <= to; p += Long.BYTES) {
+                    long w = (long) LONGS.get(input, p);
+                    long m = eq(w, '(') | eq(w, ')') | eq(w, '"') | eq(w, '|') | eq(w, ';') | eq(w, '#');
+                    if (m != 0) {
+                        maskBase = p;
+                        mask = m;
+                        return p + (Long.numberOfTrailingZeros(m) >>> 3);
+                    }
+                }
+            }
+            int q = findDelimiter(p, to);
+            return q >= 0 ? q : to;
+        }
+
+        private int findDelimiter(int p, int end) {
+            for (; p < end; ++p) {
+                switch (input[p]) {
+                    case '(':
+                    case ')':
+                    case '"':
+                    case '|':
+                    case ';':
+                    case '#':
+                        return p;
+                    default:
+                        break;
+                }
+            }
+            return -1;
+        }
+
+        // the offset of the next byte from p that is a or b, or to if there is none
+        private int next(int p, int a, int b) {
+            if (wordwise) {
+                // delimiters are often close together, so look at the first few bytes one by one
+                for (int end = Math.min(p + Long.BYTES, to); p < end; ++p) {
+                    if (input[p] == a || input[p] == b)
+                        return p;
+                }
+                for (; p + Long.BYTES <= to; p += Long.BYTES) {
+                    long w = (long) LONGS.get(input, p);
+                    long m = eq(w, a) | eq(w, b);
+                    if (m != 0)
+                        return p + (Long.numberOfTrailingZeros(m) >>> 3);
+                }
+            }
+            for (; p < to; ++p) {
+                if (input[p] == a || input[p] == b)
+                    return p;
+            }
+            return to;
+        }
+
+        // has the high bit set in exactly the bytes of w that are equal to c
+        private static long eq(long w, int c) {
+            long x = w ^ (ONES * c);
+            return ~(((x & ~HIGHS) + ~HIGHS) | x) & HIGHS;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.leque.sexpr.tree;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe pool of canonical symbols.
+ *
+ * <p>Interned symbols with the same name are the same object, so they compare by reference.
+ * The pool only holds symbols weakly: a symbol that is no longer used elsewhere
+ * is dropped from the pool by the garbage collector.
+ */
+public final class SymbolTable {
+    private final ConcurrentHashMap<String, Entry> table = new ConcurrentHashMap<>();
+    private final ReferenceQueue<SExpr> queue = new ReferenceQueue<>();
+
+    public SymbolTable() {
+    }
+
+    private static final class Entry extends WeakReference<SExpr> {
+        private final String name;
+
+        Entry(String name, SExpr symbol, ReferenceQueue<SExpr> queue) {
+            super(symbol, queue);
+            this.name = name;
+        }
+    }
+
+    /**
+     * Returns the canonical symbol named {@code name}.
+     */
+    public SExpr intern(String name) {
+        expungeStaleEntries();
+        Entry entry = table.get(name);
+        if (entry != null) {
+            SExpr symbol = entry.get();
+            if (symbol != null)
+                return symbol;
+        }
+        SExpr created = SExprs.symbolValue(name);
+        Entry newEntry = new Entry(name, created, queue);
+        while (true) {
+            Entry old = table.putIfAbsent(name, newEntry);
+            if (old == null)
+                return created;
+            SExpr existing = old.get();
+            if (existing != null)
+                return existing;
+            if (table.replace(name, old, newEntry))
+                return created;
+        }
+    }
+
+    /**
+     * Returns the number of symbols in this table, including ones that are about to be dropped.
+     */
+    public int size() {
+        expungeStaleEntries();
+        return table.size();
+    }
+
+    private void expungeStaleEntries() {
+        Reference<? extends SExpr> ref;
+        while ((ref = queue.poll()) != null) {
+            Entry entry = (Entry) ref;
+            table.remove(entry.name, entry);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package io.github.leque.sexpr.tree;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharStream} that decodes UTF-8 bytes on the fly, without copying them.
+ *
+ * <p>Pure ASCII input is indexed directly. Otherwise the stream keeps the byte offset
+ * of every 64th code point, so seeking costs at most 63 decoding steps
+ * and the index takes 1/16 byte per code point.
+ * Malformed byte sequences are decoded to U+FFFD, one byte at a time.
+ */
+public final class Utf8CharStream implements CharStream {
+    private static final int CHECKPOINT_SHIFT = 6;
+    private static final int CHECKPOINT_INTERVAL = 1 << CHECKPOINT_SHIFT;
+    private static final int REPLACEMENT_CHARACTER = 0xfffd;
+
+    private final ByteBuffer bytes;
+    private final int start;
+    private final int end;
+    private final String name;
+    private final int size;
+    private final int[] checkpoints;
+
+    private int index;
+    private int bytePos;
+    private int width;
+
+    /**
+     * Creates a stream over the remaining bytes of {@code input}.
+     * The buffer is shared, not copied, and its position is not changed.
+     */
+    public Utf8CharStream(ByteBuffer input, String sourceName) {
+        this.bytes = input.duplicate();
+        this.start = input.position();
+        this.name = sourceName;
+        this.end = input.limit();
+        int p = start;
+        while (p < end && bytes.get(p) >= 0)
+            p++;
+        if (p == end) {
+            this.size = end - start;
+            this.checkpoints = null;
+        } else {
+            int[] cps = new int[((end - start) >> CHECKPOINT_SHIFT) + 1];
+            int n = 0;
+            p = start;
+            while (p < end) {
+                if ((n & (CHECKPOINT_INTERVAL - 1)) == 0)
+                    cps[n >> CHECKPOINT_SHIFT] = p;
+                decode(p);
+                p += width;
+                n++;
+            }
+            this.size = n;
+            this.checkpoints = cps;
+        }
+        this.index = 0;
+        this.bytePos = start;
+    }
+
+    public Utf8CharStream(ByteBuffer input) {
+        this(input, IntStream.UNKNOWN_SOURCE_NAME);
+    }
+
+    private boolean isAscii() {
+        return checkpoints == null;
+    }
+
+    // decodes the code point at byte offset p and sets its length to width
+    private int decode(int p) {
+        int b0 = bytes.get(p) & 0xff;
+        if (b0 < 0x80) {
+            width = 1;
+            return b0;
+        }
+        int n;
+        int cp;
+        int min;
+        if (b0 >= 0xc2 && b0 <= 0xdf) {
+            n = 2;
+            cp = b0 & 0x1f;
+            min = 0x80;
+        } else if (b0 >= 0xe0 && b0 <= 0xef) {
+            n = 3;
+            cp = b0 & 0x0f;
+            min = 0x800;
+        } else if (b0 >= 0xf0 && b0 <= 0xf4) {
+            n = 4;
+            cp = b0 & 0x07;
+            min = 0x10000;
+        } else {
+            width = 1;
+            return REPLACEMENT_CHARACTER;
+        }
+        if (p + n > bytes.limit()) {
+            width = 1;
+            return REPLACEMENT_CHARACTER;
+        }
+        for (int i = 1; i < n; ++i) {
+            int b = bytes.get(p + i) & 0xff;
+            if ((b & 0xc0) != 0x80) {
+                width = 1;
+                return REPLACEMENT_CHARACTER;
+            }
+            cp = (cp << 6) | (b & 0x3f);
+        }
+        if (cp < min || cp > Character.MAX_CODE_POINT
+                || (Character.MIN_SURROGATE <= cp && cp <= Character.MAX_SURROGATE)) {
+            width = 1;
+            return REPLACEMENT_CHARACTER;
+        }
+        width = n;
+        return cp;
+    }
+
+    private int byteOffsetOf(int i) {
+        if (isAscii())
+            return start + i;
+        if (i == size)
+            return end;
+        int k;
+        int p;
+        if (i >= index && i - index < CHECKPOINT_INTERVAL) {
+            k = index;
+            p = bytePos;
+        } else {
+            k = i & ~(CHECKPOINT_INTERVAL - 1);
+            p = checkpoints[i >> CHECKPOINT_SHIFT];
+        }
+        for (; k < i; ++k) {
+            decode(p);
+            p += width;
+        }
+        return p;
+    }
+
+    @Override
+    public void consume() {
+        if (index >= size)
+            throw new IllegalStateException("cannot consume EOF");
+        if (isAscii()) {
+            bytePos++;
+        } else {
+            decode(bytePos);
+            bytePos += width;
+        }
+        index++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0)
+            return 0;
+        int k = index + (i > 0 ? i - 1 : i);
+        if (k < 0 || k >= size)
+            return IntStream.EOF;
+        if (isAscii())
+            return bytes.get(start + k);
+        if (i == 1)
+            return decode(bytePos);
+        return decode(byteOffsetOf(k));
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public void seek(int index) {
+        int i = Math.max(0, Math.min(index, size));
+        bytePos = byteOffsetOf(i);
+        this.index = i;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return name == null || name.isEmpty() ? IntStream.UNKNOWN_SOURCE_NAME : name;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int a = Math.max(0, interval.a);
+        int b = Math.min(interval.b, size - 1);
+        if (a > b)
+            return "";
+        if (isAscii()) {
+            byte[] bs = new byte[b - a + 1];
+            ByteBuffer src = bytes.duplicate();
+            src.position(start + a);
+            src.get(bs);
+            return new String(bs, StandardCharsets.ISO_8859_1);
+        }
+        StringBuilder builder = new StringBuilder(b - a + 1);
+        int p = byteOffsetOf(a);
+        for (int k = a; k <= b; ++k) {
+            builder.appendCodePoint(decode(p));
+            p += width;
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, size - 1));
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class SExprCacheTest {
+    @Test
+    public void SExprCache_returns_cached_datums_and_counts_hits() {
+        SExprCache cache = new SExprCache(1 << 20);
+        String input = "(policy (allow read) (deny \"write\"))";
+        SExpr first = cache.parse(input);
+        SExpr second = cache.parse(new String(input.toCharArray()));
+        SExpr bytes = cache.parse(input.getBytes(StandardCharsets.UTF_8));
+        SExpr bytesAgain = cache.parse(input.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(SExprParser.parse(input), first),
+                () -> Assertions.assertSame(first, second),
+                () -> Assertions.assertEquals(first, bytes),
+                () -> Assertions.assertSame(bytes, bytesAgain),
+                () -> Assertions.assertEquals(2, cache.getStats().getHitCount()),
+                () -> Assertions.assertEquals(2, cache.getStats().getMissCount()),
+                () -> Assertions.assertEquals(0.5, cache.getStats().getHitRate()),
+                () -> Assertions.assertEquals(2, cache.size()),
+                () -> Assertions.assertThrows(RuntimeException.class, () -> cache.parse("(unbalanced")),
+                () -> Assertions.assertEquals(2, cache.size())
+        );
+    }
+
+    @Test
+    public void SExprCache_evicts_least_recently_used_entries_by_weight() {
+        String a = "(a " + "x ".repeat(100) + ")";
+        SExprCache probe = new SExprCache(1 << 20);
+        probe.parse(a);
+        long weight = probe.getWeight();
+        // room for two entries of the same length, not three
+        SExprCache cache = new SExprCache(weight * 5 / 2);
+        SExpr cachedA = cache.parse(a);
+        cache.parse("(b " + "x ".repeat(100) + ")");
+        // a is now used more recently than b
+        cache.parse(a);
+        cache.parse("(c " + "x ".repeat(100) + ")");
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(1, cache.getStats().getEvictionCount()),
+                () -> Assertions.assertEquals(2, cache.size()),
+                () -> Assertions.assertTrue(cache.getWeight() == weight * 2),
+                () -> Assertions.assertSame(cachedA, cache.parse(a)),
+                // larger than the cache
+                () -> Assertions.assertEquals(SExprParser.parse("(d " + "x ".repeat(1000) + ")"),
+                        cache.parse("(d " + "x ".repeat(1000) + ")")),
+                () -> Assertions.assertEquals(2, cache.size())
+        );
+    }
+
+    @Test
+    public void SExprCache_is_thread_safe() throws Exception {
+        SExprCache cache = new SExprCache(64 << 20);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; ++i) {
+                        String input = "(message " + (i % 100) + ")";
+                        Assertions.assertEquals(SExprParser.parse(input, SExprParser.Engine.READER), cache.parse(input));
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        SExprCache.Stats stats = cache.getStats();
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(8000, stats.getHitCount() + stats.getMissCount()),
+                () -> Assertions.assertTrue(stats.getMissCount() >= 100),
+                () -> Assertions.assertEquals(100, cache.size())
+        );
+    }
+}
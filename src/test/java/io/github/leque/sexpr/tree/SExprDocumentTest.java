@@ -0,0 +1,109 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+class SExprDocumentTest {
+    private static List<SExpr> parseAll(String input) {
+        List<SExpr> result = new ArrayList<>();
+        new SExprReader(input).iterator().forEachRemaining(result::add);
+        return result;
+    }
+
+    @Test
+    public void SExprDocument_reuses_unchanged_subtrees() {
+        SExprDocument document = SExprDocument.parse("(define (f x) (+ x 1)) (define y #(1 2 3)) 'z");
+        SExpr f = document.getDatums().get(0);
+        SExpr y = document.getDatums().get(1);
+        // (+ x 1) -> (+ x 10)
+        SExprDocument edited = document.edit(20, 0, "0");
+        SExpr g = edited.getDatums().get(0);
+        Assertions.assertAll(
+                () -> Assertions.assertEquals("(define (f x) (+ x 10)) (define y #(1 2 3)) 'z", edited.getText()),
+                () -> Assertions.assertEquals(parseAll(edited.getText()), edited.getDatums()),
+                () -> Assertions.assertSame(y, edited.getDatums().get(1)),
+                () -> Assertions.assertSame(document.getDatums().get(2), edited.getDatums().get(2)),
+                () -> Assertions.assertSame(f.elements().get(0), g.elements().get(0)),
+                () -> Assertions.assertSame(f.elements().get(1), g.elements().get(1)),
+                () -> Assertions.assertEquals(Set.of("(define (f x) (+ x 10))", "(+ x 10)", "10"),
+                        toStrings(edited.getChangedNodes())),
+                () -> Assertions.assertEquals(parseAll("(define (f x) (+ x 1)) (define y #(1 2 3)) 'z"),
+                        document.getDatums())
+        );
+    }
+
+    @Test
+    public void SExprDocument_falls_back_to_enclosing_lists() {
+        String text = "(a (b \"c\" d) e) (f)";
+        SExprDocument document = SExprDocument.parse(text);
+        // the edited elements of (b "c" d) are not balanced, but those of the outer list are
+        SExprDocument split = document.edit(text.indexOf(" \"c"), 0, ") (");
+        // the first edit leaves the text unbalanced
+        SExprDocument dotted = document.edit(List.of(
+                new SExprDocument.TextEdit(text.indexOf("(b"), 0, ". ("),
+                new SExprDocument.TextEdit(text.indexOf(" (f") + 3, 0, ")")));
+        SExprDocument renamed = dotted.edit(dotted.getText().indexOf("e)"), 1, "e2");
+        Assertions.assertAll(
+                () -> Assertions.assertEquals("(a (b) ( \"c\" d) e) (f)", split.getText()),
+                () -> Assertions.assertEquals(parseAll(split.getText()), split.getDatums()),
+                () -> Assertions.assertSame(document.getDatums().get(1), split.getDatums().get(1)),
+                () -> Assertions.assertEquals("(a . ((b \"c\" d) e)) (f)", dotted.getText()),
+                () -> Assertions.assertEquals(parseAll(dotted.getText()), dotted.getDatums()),
+                () -> Assertions.assertEquals(parseAll("(a (b \"c\" d) e2) (f)"), renamed.getDatums()),
+                () -> Assertions.assertThrows(RuntimeException.class, () -> document.edit(0, 1, ""))
+        );
+    }
+
+    @Test
+    public void SExprDocument_reports_shared_values_read_again_as_changed() {
+        // -3.5 -> -3 5 -> 5, where the cached fixnum 5 replaces the 5 read by the first edit
+        SExprDocument edited = SExprDocument.parse("-3.5\n").edit(List.of(
+                new SExprDocument.TextEdit(2, 1, " "),
+                new SExprDocument.TextEdit(0, 3, " ")));
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(List.of(SExprs.numberValue(5)), edited.getDatums()),
+                () -> Assertions.assertTrue(edited.getChangedNodes().contains(SExprs.numberValue(5)))
+        );
+    }
+
+    @Test
+    public void SExprDocument_reads_as_from_scratch_after_random_edits() {
+        String[] insertions = {"", " ", "a", "1", "(", ")", "#(", "'", ",@", "\"", ";", "\n", "#;", ".", "#|", "|#", "|"};
+        Random random = new Random(42);
+        for (int round = 0; round < 200; ++round) {
+            SExprDocument document = SExprDocument.parse(
+                    "(define (f x) ; comment\n  (let ((y '(1 . 2)) (z #(a \"b c\" #\\d))) `(,x ,@y . z)))\n#;(skipped) (g #|c|# 1)");
+            for (int step = 0; step < 20; ++step) {
+                String text = document.getText();
+                int offset = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(Math.min(3, text.length() - offset) + 1);
+                String inserted = insertions[random.nextInt(insertions.length)];
+                String expected = text.substring(0, offset) + inserted + text.substring(offset + removed);
+                List<SExpr> datums;
+                try {
+                    datums = parseAll(expected);
+                } catch (RuntimeException e) {
+                    SExprDocument d = document;
+                    Assertions.assertThrows(RuntimeException.class, () -> d.edit(offset, removed, inserted), expected);
+                    continue;
+                }
+                document = document.edit(offset, removed, inserted);
+                Assertions.assertEquals(expected, document.getText());
+                Assertions.assertEquals(datums, document.getDatums(), expected);
+            }
+        }
+    }
+
+    private static Set<String> toStrings(Set<SExpr> nodes) {
+        Set<String> result = new HashSet<>();
+        for (SExpr node : nodes)
+            result.add(node.toWrittenString());
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+class SExprEncoderTest {
+    private static final String[] INPUTS = {
+            "#t", "#f", "#\\a", "#\\😀", "0", "-1", "9223372036854775807", "-9223372036854775808",
+            "123456789012345678901234567890", "4.2", "-0.001", "3.14159265358979323846", "+inf.0", "-inf.0", "+nan.0",
+            "\"\"", "\"a\\x0;b 😀 é\"", "a", "|a b|", "#u8()", "#u8(0 127 128 255)",
+            "()", "(a b a b)", "(1 . 2)", "(1 2 . 3)", "#()", "#(1 #(2) (3 . 4))", "'a", "(define (f x) (* x x))",
+    };
+
+    @Test
+    public void SExprEncoder_round_trips() {
+        Assertions.assertAll(Arrays.stream(INPUTS).map(input -> () -> {
+            SExpr expr = SExprParser.parse(input);
+            Assertions.assertEquals(expr, SExprDecoder.decode(SExprEncoder.encodeToBuffer(expr)), input);
+        }));
+        SExpr decimal = SExprs.numberValue(new BigDecimal("1.500"));
+        Assertions.assertEquals(decimal.getNumberValue(),
+                SExprDecoder.decode(SExprEncoder.encodeToBuffer(decimal)).getNumberValue());
+    }
+
+    @Test
+    public void SExprEncoder_shares_symbols_across_datums() {
+        SExprEncoder encoder = new SExprEncoder();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        SExpr first = SExprParser.parse("(lambda (x) x)");
+        SExpr second = SExprParser.parse("(lambda (y) x)");
+        encoder.encode(first, buffer);
+        int firstLength = buffer.position();
+        encoder.encode(second, buffer);
+        int secondLength = buffer.position() - firstLength;
+        buffer.flip();
+        SExprDecoder decoder = new SExprDecoder(buffer);
+        SExpr decodedFirst = decoder.decode().get();
+        SExpr decodedSecond = decoder.decode().get();
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(first, decodedFirst),
+                () -> Assertions.assertEquals(second, decodedSecond),
+                () -> Assertions.assertSame(decodedFirst.elements().get(0), decodedSecond.elements().get(0)),
+                () -> Assertions.assertTrue(secondLength < firstLength - 3),
+                () -> Assertions.assertEquals(Optional.empty(), decoder.decode())
+        );
+    }
+
+    @Test
+    public void SExprEncoder_leaves_buffer_unchanged_on_overflow() {
+        SExprEncoder encoder = new SExprEncoder();
+        ByteBuffer small = ByteBuffer.allocate(8);
+        SExpr expr = SExprParser.parse("(symbol \"string\")");
+        Assertions.assertThrows(BufferOverflowException.class, () -> encoder.encode(expr, small));
+        Assertions.assertEquals(0, small.position());
+        ByteBuffer large = ByteBuffer.allocate(64);
+        encoder.encode(expr, large);
+        Assertions.assertEquals(expr, SExprDecoder.decode(large.flip()));
+    }
+
+    @Test
+    public void SExprDecoder_handles_deep_nesting_and_rejects_malformed_input() {
+        int depth = 100000;
+        String input = String.join("", Collections.nCopies(depth, "(")) + String.join("", Collections.nCopies(depth, ")"));
+        SExpr expr = SExprParser.parse(input, SExprParser.Engine.READER);
+        ByteBuffer encoded = SExprEncoder.encodeToBuffer(expr);
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(input, SExprDecoder.decode(encoded.duplicate()).toWrittenString()),
+                () -> Assertions.assertThrows(RuntimeException.class,
+                        () -> SExprDecoder.decode(encoded.duplicate().limit(encoded.limit() - 1))),
+                () -> Assertions.assertThrows(RuntimeException.class,
+                        () -> SExprDecoder.decode(ByteBuffer.wrap(new byte[]{'(', ')'}))),
+                () -> Assertions.assertEquals("byte 6: empty decimal", Assertions.assertThrows(RuntimeException.class,
+                        () -> SExprDecoder.decode(ByteBuffer.wrap(new byte[]{
+                                SExprEncoder.MAGIC_0, SExprEncoder.MAGIC_1, SExprEncoder.VERSION,
+                                SExprEncoder.TAG_DECIMAL, 0, 0}))).getMessage())
+        );
+    }
+}
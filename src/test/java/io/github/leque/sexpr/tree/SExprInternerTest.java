@@ -0,0 +1,100 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class SExprInternerTest {
+    private static final String CONFIG = "((service a (retry (max 3) (backoff 100)) \"x\" 1.5)"
+            + " (service b (retry (max 3) (backoff 100)) \"x\" 1.5)"
+            + " (service c (retry (max 3) (backoff 100)) #(\"x\" 1.5) (a . b) (a . b) '#u8(1 2) '#u8(1 2)))";
+
+    @Test
+    public void SExprParser_shares_repeated_subtrees() {
+        for (SExprParser.Engine engine : SExprParser.Engine.values()) {
+            SExprInterner interner = new SExprInterner(1024);
+            SExpr parsed = SExprParser.parse(CONFIG, engine, null, interner);
+            List<SExpr> services = parsed.elements();
+            SExpr a = services.get(0);
+            SExpr b = services.get(1);
+            SExpr c = services.get(2);
+            Assertions.assertAll(
+                    engine.name(),
+                    () -> Assertions.assertEquals(SExprParser.parse(CONFIG, engine), parsed),
+                    () -> Assertions.assertSame(a.elements().get(2), b.elements().get(2)),
+                    () -> Assertions.assertSame(a.elements().get(2), c.elements().get(2)),
+                    () -> Assertions.assertSame(a.elements().get(3), c.elements().get(3).elements().get(0)),
+                    () -> Assertions.assertSame(a.elements().get(4), c.elements().get(3).elements().get(1)),
+                    () -> Assertions.assertSame(c.elements().get(4), c.elements().get(5)),
+                    () -> Assertions.assertSame(c.elements().get(6), c.elements().get(7)),
+                    () -> Assertions.assertSame(a.elements().get(0), b.elements().get(0)),
+                    () -> Assertions.assertSame(parsed, SExprParser.parse(CONFIG, engine, null, interner)),
+                    () -> Assertions.assertSame(parsed, interner.internTree(SExprParser.parse(CONFIG, engine)))
+            );
+        }
+    }
+
+    @Test
+    public void SExprInterner_keeps_number_representations() {
+        String input = "(1 1.0 (x 2) (x 2.0))";
+        for (SExprParser.Engine engine : SExprParser.Engine.values()) {
+            SExpr parsed = SExprParser.parse(input, engine, null, new SExprInterner(1024));
+            Assertions.assertEquals(input, parsed.toWrittenString(), engine.name());
+        }
+    }
+
+    @Test
+    public void SExprInterner_factories_return_canonical_datums() {
+        SExprInterner interner = new SExprInterner(64);
+        SExpr retry = interner.listValue(interner.symbolValue("retry"), interner.numberValue(3));
+        SExpr nested = SExprs.listValue();
+        for (int i = 0; i < 100000; ++i)
+            nested = SExprs.listValue(nested, SExprs.numberValue(i));
+        SExpr deep = nested;
+        SExpr deepCopy = SExprParser.parse(deep.toWrittenString(), SExprParser.Engine.READER);
+        SExprInterner large = new SExprInterner(1 << 19);
+        SExpr interned = large.internTree(deep);
+        Assertions.assertAll(
+                () -> Assertions.assertSame(retry, interner.listValue(interner.symbolValue("retry"), interner.numberValue(3))),
+                () -> Assertions.assertSame(retry, interner.internTree(SExprs.listValue(SExprs.symbolValue("retry"), SExprs.numberValue(3)))),
+                () -> Assertions.assertNotSame(retry, interner.intern(SExprs.listValue(SExprs.symbolValue("retry"), SExprs.numberValue(3)))),
+                () -> Assertions.assertSame(interner.numberValue("1.0"), interner.numberValue("1.00")),
+                () -> Assertions.assertTrue(interner.numberValue("1.0").isFlonum()),
+                () -> Assertions.assertNotSame(interner.numberValue(1), interner.numberValue("1.0")),
+                () -> Assertions.assertNotSame(interner.numberValue(new BigDecimal("1.0")), interner.numberValue(new BigDecimal("1.00"))),
+                () -> Assertions.assertNotSame(interner.flonumValue(0.0), interner.flonumValue(-0.0)),
+                () -> Assertions.assertSame(interner.stringValue("x"), interner.stringValue("x")),
+                () -> Assertions.assertSame(interner.dottedListValue(List.of(retry), interner.symbolValue("z")),
+                        interner.dottedListValue(List.of(retry), interner.symbolValue("z"))),
+                () -> Assertions.assertSame(interner.vectorValue(retry), interner.vectorValue(retry)),
+                () -> Assertions.assertNotSame(interner.listValue(retry), interner.vectorValue(retry)),
+                () -> Assertions.assertEquals(deep, interned),
+                () -> Assertions.assertEquals(interned, large.internTree(deepCopy)),
+                () -> Assertions.assertSame(interned, large.internTree(interned)),
+                () -> Assertions.assertSame(SExprs.trueValue(), interner.intern(SExprs.trueValue())),
+                () -> Assertions.assertThrows(IllegalArgumentException.class, () -> new SExprInterner(0))
+        );
+    }
+
+    @Test
+    public void SExprInterner_is_safe_to_share_between_threads() throws Exception {
+        SExprInterner interner = new SExprInterner(16);
+        SExpr expected = SExprParser.parse(CONFIG);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SExpr>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; ++i)
+                futures.add(executor.submit(() -> SExprParser.parse(CONFIG, SExprParser.Engine.READER, null, interner)));
+            for (Future<SExpr> future : futures)
+                Assertions.assertEquals(expected, future.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -1,8 +1,30 @@
 package io.github.leque.sexpr.tree;
 
+import io.github.leque.sexpr.antlr.SchemeLexer;
+import io.github.leque.sexpr.antlr.SchemeParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+
 class SExprParserTest {
     @Test
     public void SExprParser_is_able_to_parse_true() {
@@ -89,6 +111,171 @@ class SExprParserTest {
         );
     }
 
+    @Test
+    public void SExprParser_uses_primitive_numbers_when_exact() {
+        for (SExprParser.Engine engine : SExprParser.Engine.values()) {
+            SExpr fixnum = SExprParser.parse("-42", engine);
+            SExpr bignum = SExprParser.parse("123456789012345678901234567890", engine);
+            SExpr flonum = SExprParser.parse("0.1", engine);
+            SExpr decimal = SExprParser.parse("3.14159265358979323846", engine);
+            Assertions.assertAll(
+                    () -> Assertions.assertTrue(fixnum.isFixnum()),
+                    () -> Assertions.assertEquals(-42L, fixnum.longValue()),
+                    () -> Assertions.assertFalse(bignum.isFixnum()),
+                    () -> Assertions.assertTrue(flonum.isFlonum()),
+                    () -> Assertions.assertEquals(0.1, flonum.doubleValue()),
+                    () -> Assertions.assertEquals(new BigDecimal("0.1"), flonum.getNumberValue().get()),
+                    () -> Assertions.assertFalse(decimal.isFlonum()),
+                    () -> Assertions.assertEquals(new BigDecimal("3.14159265358979323846"), decimal.getNumberValue().get()),
+                    () -> Assertions.assertThrows(UnsupportedOperationException.class, flonum::longValue)
+            );
+        }
+    }
+
+    @Test
+    public void SExprParser_reads_written_flonums_as_flonums() {
+        Random random = new Random(42);
+        DoubleStream samples = DoubleStream.concat(
+                DoubleStream.of(7.827334279650101E9, 0.1 + 0.2, 1e300, Double.MAX_VALUE, Double.MIN_VALUE, Double.MIN_NORMAL),
+                random.longs(1000).mapToDouble(Double::longBitsToDouble).filter(Double::isFinite));
+        Assertions.assertAll(samples.mapToObj(SExprs::flonumValue).flatMap(expected ->
+                Arrays.stream(SExprParser.Engine.values()).map(engine -> () -> {
+                    SExpr actual = SExprParser.parse(expected.toWrittenString(), engine);
+                    Assertions.assertTrue(actual.isFlonum(), expected.toWrittenString());
+                    Assertions.assertEquals(expected.doubleValue(), actual.doubleValue(), expected.toWrittenString());
+                })));
+        for (SExprParser.Engine engine : SExprParser.Engine.values())
+            // not how 0.1 is written, so the digits are kept
+            Assertions.assertFalse(SExprParser.parse("0.10000000000000001", engine).isFlonum());
+    }
+
+    @Test
+    public void SExprs_numbers_are_equal_across_representations() {
+        SExpr[] fortyTwos = {
+                SExprs.numberValue(42),
+                SExprs.flonumValue(42.0),
+                SExprs.numberValue(new BigDecimal("42.000")),
+                SExprs.numberValue(BigInteger.valueOf(42)),
+        };
+        Assertions.assertAll(Arrays.stream(fortyTwos).flatMap(a -> Arrays.stream(fortyTwos).map(b -> () -> {
+            Assertions.assertEquals(a, b);
+            Assertions.assertEquals(a.hashCode(), b.hashCode());
+        })));
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(SExprs.flonumValue(0.5), SExprs.numberValue(new BigDecimal("0.50"))),
+                () -> Assertions.assertEquals(SExprs.flonumValue(0.5).hashCode(), SExprs.numberValue(new BigDecimal("0.50")).hashCode()),
+                () -> Assertions.assertNotEquals(SExprs.numberValue(Long.MAX_VALUE), SExprs.flonumValue(0x1p63)),
+                () -> Assertions.assertEquals(SExprs.flonumValue(0.1), SExprs.numberValue(new BigDecimal(0.1))),
+                () -> Assertions.assertNotEquals(SExprs.flonumValue(0.1), SExprs.numberValue(new BigDecimal("0.1"))),
+                () -> Assertions.assertNotEquals(SExprs.flonumValue(2.26143495548026829E18),
+                        SExprs.numberValue(new BigDecimal("2261434955480268290"))),
+                () -> Assertions.assertEquals(SExprs.flonumValue(2.26143495548026829E18),
+                        SExprs.numberValue(2261434955480268288L)),
+                () -> Assertions.assertEquals("42.0", SExprParser.parse("42.").toWrittenString()),
+                () -> Assertions.assertEquals("0.0001", SExprs.flonumValue(1e-4).toWrittenString())
+        );
+    }
+
+    @Test
+    public void SExprs_equal_numbers_are_found_in_hash_sets() {
+        SExpr[][] pairs = {
+                {SExprs.flonumValue(2.26143495548026829E18), SExprs.numberValue(new BigDecimal("2261434955480268288.0"))},
+                {SExprs.flonumValue(0.1), SExprs.numberValue(new BigDecimal(0.1))},
+                {SExprs.flonumValue(0x1p70), SExprs.numberValue(new BigDecimal(0x1p70))},
+                {SExprs.flonumValue(-0.0), SExprs.numberValue(new BigDecimal("0.00"))},
+        };
+        Assertions.assertAll(Arrays.stream(pairs).map(pair -> () -> {
+            Set<SExpr> set = new HashSet<>();
+            set.add(pair[0]);
+            Assertions.assertEquals(pair[0], pair[1]);
+            Assertions.assertTrue(set.contains(pair[1]), pair[1].toWrittenString());
+        }));
+    }
+
+    @Test
+    public void SExprs_compound_values_compare_and_hash_deep_trees() {
+        int depth = 100000;
+        String lists = String.join("", Collections.nCopies(depth, "(")) + "x" + String.join("", Collections.nCopies(depth, ")"));
+        String other = String.join("", Collections.nCopies(depth, "(")) + "y" + String.join("", Collections.nCopies(depth, ")"));
+        SExpr a = SExprParser.parse(lists, SExprParser.Engine.READER);
+        SExpr b = SExprParser.parse(lists, SExprParser.Engine.READER);
+        SExpr c = SExprParser.parse(other, SExprParser.Engine.READER);
+        SExpr list = SExprParser.parse("(1 (2 #(3)) 4.0)");
+        Map<SExpr, String> map = new HashMap<>();
+        map.put(a, "a");
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(a, b),
+                () -> Assertions.assertEquals(a.hashCode(), b.hashCode()),
+                () -> Assertions.assertNotEquals(a, c),
+                () -> Assertions.assertEquals("a", map.get(b)),
+                () -> Assertions.assertNull(map.get(c)),
+                () -> Assertions.assertEquals(list.elements().hashCode(), list.hashCode()),
+                () -> Assertions.assertEquals(list, SExprParser.parse("(1.0 (2 #(3.00)) 4)")),
+                () -> Assertions.assertNotEquals(list, SExprParser.parse("(1 (2 (3)) 4)")),
+                () -> Assertions.assertNotEquals(SExprParser.parse("(1 . 2)"), SExprParser.parse("(1 2)")),
+                () -> Assertions.assertNotEquals(SExprParser.parse("(1 2)"), SExprParser.parse("#(1 2)"))
+        );
+    }
+
+    @Test
+    public void SExprs_shares_common_atoms() {
+        for (SExprParser.Engine engine : SExprParser.Engine.values()) {
+            SExpr expr = SExprParser.parse("(#\\a 1 () #() 'x `y ,z ,@w #\\a 1 () #() 'x `y ,z ,@w 100000 #\\λ)", engine);
+            List<SExpr> elems = expr.elements();
+            Assertions.assertAll(
+                    engine.name(),
+                    () -> Assertions.assertSame(SExprs.characterValue('a'), elems.get(0)),
+                    () -> Assertions.assertSame(SExprs.numberValue(1), elems.get(1)),
+                    () -> Assertions.assertSame(SExprs.listValue(), elems.get(2)),
+                    () -> Assertions.assertSame(SExprs.vectorValue(List.of()), elems.get(3)),
+                    () -> Assertions.assertSame(SExprs.numberValue(BigInteger.ONE), elems.get(9)),
+                    () -> Assertions.assertSame(elems.get(4).elements().get(0), elems.get(12).elements().get(0)),
+                    () -> Assertions.assertSame(elems.get(5).elements().get(0), elems.get(13).elements().get(0)),
+                    () -> Assertions.assertSame(elems.get(6).elements().get(0), elems.get(14).elements().get(0)),
+                    () -> Assertions.assertSame(elems.get(7).elements().get(0), elems.get(15).elements().get(0)),
+                    () -> Assertions.assertEquals(SExprs.symbolValue("unquote-splicing"), elems.get(7).elements().get(0)),
+                    () -> Assertions.assertNotSame(elems.get(16), SExprParser.parse("100000", engine)),
+                    () -> Assertions.assertNotSame(elems.get(17), SExprParser.parse("#\\λ", engine)),
+                    () -> Assertions.assertEquals(SExprs.characterValue(0x3bb), elems.get(17))
+            );
+        }
+    }
+
+    @Test
+    public void SExpr_direct_accessors_agree_with_optional_accessors() {
+        SExpr expr = SExprParser.parse("(#t #\\a \"s\" sym #u8(0 255) (1 . 2) #(3))");
+        List<SExpr> elems = expr.elements();
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(expr.getListElements().get(), elems),
+                () -> Assertions.assertTrue(elems.get(0).booleanValue()),
+                () -> Assertions.assertEquals('a', elems.get(1).codePoint()),
+                () -> Assertions.assertEquals("s", elems.get(2).stringValue()),
+                () -> Assertions.assertEquals("sym", elems.get(3).symbolName()),
+                () -> Assertions.assertEquals(2, elems.get(4).bytevectorLength()),
+                () -> Assertions.assertEquals(255, elems.get(4).bytevectorRef(1)),
+                () -> Assertions.assertEquals(List.of(SExprs.numberValue(1)), elems.get(5).elements()),
+                () -> Assertions.assertEquals(SExprs.numberValue(2), elems.get(5).tail()),
+                () -> Assertions.assertEquals(elems.get(6).getVectorElements().get(), elems.get(6).elements()),
+                () -> Assertions.assertThrows(UnsupportedOperationException.class, elems.get(3)::elements),
+                () -> Assertions.assertThrows(UnsupportedOperationException.class, () -> elems.get(3).codePoint()),
+                () -> Assertions.assertInstanceOf(SExprs.SymbolValue.class, elems.get(3))
+        );
+    }
+
+    @Test
+    public void SExprParser_is_able_to_parse_and_write_deeply_nested_data() {
+        int depth = 100000;
+        String lists = String.join("", Collections.nCopies(depth, "(")) + "x" + String.join("", Collections.nCopies(depth, ")"));
+        String vectors = String.join("", Collections.nCopies(depth, "#(")) + String.join("", Collections.nCopies(depth, ")"));
+        String quotes = String.join("", Collections.nCopies(depth, "'")) + "x";
+        String dotted = String.join("", Collections.nCopies(depth, "(1 . ")) + "2" + String.join("", Collections.nCopies(depth, ")"));
+        Assertions.assertAll(Stream.of(lists, vectors, quotes).map(input -> () ->
+                Assertions.assertEquals(input, SExprParser.parse(input).toWrittenString())));
+        Assertions.assertEquals(
+                "(" + String.join(" ", Collections.nCopies(depth, "1")) + " . 2)",
+                SExprParser.parse(dotted).toWrittenString());
+    }
+
     @Test
     public void SExprParser_is_able_to_parse_flonum() {
         Assertions.assertAll(
@@ -383,4 +570,104 @@ class SExprParserTest {
                         SExprParser.parse("(1 2 #; '2.5 3)"))
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void SExprParser_is_able_to_parse_comments_around_dots() {
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(
+                        SExprParser.parse("(1 . 5)"),
+                        SExprParser.parse("(1 #;2 ; 3\n . #|4|# #;4 5 #;6 )")),
+                () -> Assertions.assertEquals(
+                        SExprParser.parse("()"),
+                        SExprParser.parse("( #;a ; b\n )")),
+                () -> Assertions.assertEquals(
+                        SExprs.listValue(SExprs.symbolValue("u8"), SExprs.bytevectorValue((byte) (1 + Byte.MIN_VALUE))),
+                        SExprParser.parse("(u8 #u8( #;0 1 ; 2\n ))")),
+                () -> Assertions.assertThrows(Exception.class,
+                        () -> SExprParser.parse("( . a)")),
+                () -> Assertions.assertThrows(Exception.class,
+                        () -> SExprParser.parse("(a . b c)")),
+                () -> Assertions.assertThrows(Exception.class,
+                        () -> SExprParser.parse("# u8(1)")),
+                () -> Assertions.assertThrows(Exception.class,
+                        () -> SExprParser.parse("#u8 (1)"))
+        );
+    }
+
+    @Test
+    public void SExprListener_builds_datums_without_parse_tree() {
+        String input = "(define (f x) #;(skip) `(,x ,@(g \"s\") . #(1 2.5 #u8(3))))";
+        SchemeParser parser = new SchemeParser(new CommonTokenStream(new SchemeLexer(CharStreams.fromString(input))));
+        SExprParser.SExprListener listener = new SExprParser.SExprListener();
+        parser.setBuildParseTree(false);
+        parser.addParseListener(listener);
+        SchemeParser.SexprContext ctx = parser.sexpr();
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(SExprParser.parse(input, SExprParser.Engine.READER), listener.getParsedExpression()),
+                () -> Assertions.assertNull(ctx.children),
+                () -> Assertions.assertThrows(RuntimeException.class, () -> SExprParser.parse("(#;)")),
+                () -> Assertions.assertThrows(RuntimeException.class, () -> SExprParser.parse("(a #;(b . ) c)"))
+        );
+    }
+
+    @Test
+    public void SExprParser_reuses_a_parser_across_inputs() {
+        SExprParser.DfaCache cache = new SExprParser.DfaCache();
+        SExprParser.Reusable parser = new SExprParser.Reusable(cache, null, null);
+        String deep = String.join("", Collections.nCopies(1000, "(")) + String.join("", Collections.nCopies(1000, ")"));
+        List<String> inputs = List.of("(define (f x) `(,x . #(1 \"a\")))", "#u8(1 2)", "'sym", deep, "(a ; c\n . b)");
+        for (String input : inputs)
+            Assertions.assertEquals(SExprParser.parse(input, SExprParser.Engine.READER), parser.parse(input), input);
+        Assertions.assertThrows(RuntimeException.class, () -> parser.parse("(a . b c)"));
+        Assertions.assertThrows(RuntimeException.class, () -> parser.parse("# u8(1)"));
+        // a syntax error, not the failure of building a dotted list from the recovered tree
+        for (String input : List.of("(a .)", "(a . )", "#((a .))")) {
+            Assertions.assertThrowsExactly(RuntimeException.class, () -> parser.parse(input), input);
+            Assertions.assertThrowsExactly(RuntimeException.class, () -> SExprParser.parse(input), input);
+        }
+        Assertions.assertEquals(SExprs.numberValue(42), parser.parse(ByteBuffer.wrap("42".getBytes(StandardCharsets.UTF_8))));
+        SExprParser.DfaCache.Stats warm = cache.getStats();
+
+        SExprParser.DfaCache bounded = new SExprParser.DfaCache();
+        SExprParser.Reusable boundedParser = new SExprParser.Reusable(bounded, null, null);
+        boundedParser.warmUp(List.of("(a (b . c) #(d))", "(a . "));
+        SExprParser.DfaCache.Stats warmed = bounded.getStats();
+        bounded.setMaximumStateCount(0);
+        SExpr parsed = boundedParser.parse("(a (b . c) #(d))");
+        SExprParser.DfaCache.Stats trimmed = bounded.getStats();
+        Assertions.assertAll(
+                () -> Assertions.assertTrue(warm.getParserStateCount() > 0, warm::toString),
+                () -> Assertions.assertTrue(warm.getLexerStateCount() > 0, warm::toString),
+                () -> Assertions.assertEquals(0, warm.getClearCount()),
+                () -> Assertions.assertTrue(warmed.getParserStateCount() > 0, warmed::toString),
+                () -> Assertions.assertEquals(SExprParser.parse("(a (b . c) #(d))"), parsed),
+                () -> Assertions.assertEquals(1, trimmed.getClearCount()),
+                () -> Assertions.assertEquals(0, trimmed.getParserStateCount() + trimmed.getLexerStateCount()),
+                () -> Assertions.assertEquals(SExprs.symbolValue("x"), boundedParser.parse("x")),
+                () -> Assertions.assertThrows(IllegalArgumentException.class, () -> bounded.setMaximumStateCount(-1))
+        );
+    }
+
+    @Test
+    public void SExprParser_is_able_to_parse_all_datums_in_parallel() {
+        String piece = "(a \")(\" |)| #\\) 'x #| ( #| ) |# |# ; )\n (b . c) #(1 2) #u8(3)) 42 \"s\" #;(d) '(e) ";
+        String input = String.join("", Collections.nCopies(200, piece)) + "#; #; (f) (g) (h)";
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        List<SExpr> expected = SExprParser.parseAll(new StringReader(input)).collect(Collectors.toList());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assertions.assertAll(
+                    () -> Assertions.assertEquals(801, expected.size()),
+                    () -> Assertions.assertEquals(expected, SExprParser.parseAllParallel(bytes, pool, null, 64)),
+                    () -> Assertions.assertEquals(expected, SExprParser.parseAllParallel(bytes)),
+                    () -> Assertions.assertEquals(
+                            Assertions.assertThrows(RuntimeException.class,
+                                    () -> SExprParser.parseAll(new StringReader(input + " (\"")).count()).getMessage(),
+                            Assertions.assertThrows(RuntimeException.class,
+                                    () -> SExprParser.parseAllParallel((input + " (\"").getBytes(StandardCharsets.UTF_8), pool, null, 64)).getMessage())
+            );
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+class SExprPrettyPrinterTest {
+    @Test
+    public void SExprPrettyPrinter_keeps_fitting_datum_on_one_line() {
+        String input = "(define (f x) (* x x))";
+        Assertions.assertEquals(input, new SExprPrettyPrinter(80).toPrettyString(SExprParser.parse(input)));
+    }
+
+    @Test
+    public void SExprPrettyPrinter_indents_by_head_symbol() {
+        SExpr expr = SExprParser.parse(
+                "(define (fact n) (if (= n 0) 1 (* n (fact (- n 1)))) 'done #(1 2 3 4 5 6 7 8 9 10 11 12))");
+        Assertions.assertEquals(String.join("\n",
+                "(define (fact n)",
+                "  (if (= n 0)",
+                "      1",
+                "      (* n",
+                "         (fact (- n",
+                "                  1))))",
+                "  'done",
+                "  #(1 2 3 4 5 6 7 8 9",
+                "    10 11 12))"
+        ), new SExprPrettyPrinter(22).toPrettyString(expr));
+    }
+
+    @Test
+    public void SExprPrettyPrinter_accepts_custom_rules() {
+        SExpr expr = SExprParser.parse("(my-form a b c)");
+        Assertions.assertAll(
+                () -> Assertions.assertEquals("(my-form a\n         b\n         c)",
+                        new SExprPrettyPrinter(10).toPrettyString(expr)),
+                () -> Assertions.assertEquals("(my-form a\n  b\n  c)",
+                        new SExprPrettyPrinter(10).indentBody("my-form", 1).toPrettyString(expr))
+        );
+    }
+
+    @Test
+    public void SExprPrettyPrinter_output_reads_back() {
+        String wide = "(" + String.join(" ", Collections.nCopies(2000, "(a \"b c\" #u8(1 2 3) (d . e))")) + ")";
+        int depth = 100000;
+        String deep = String.join("", Collections.nCopies(depth, "(")) + String.join("", Collections.nCopies(depth, ")"));
+        for (String input : new String[]{wide, deep}) {
+            SExpr expr = SExprParser.parse(input, SExprParser.Engine.READER);
+            String pretty = new SExprPrettyPrinter(40).toPrettyString(expr);
+            Assertions.assertEquals(expr.toWrittenString(),
+                    SExprParser.parse(pretty, SExprParser.Engine.READER).toWrittenString());
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+class SExprReaderTest {
+    private static final String[] INPUTS = {
+            "#t", "#true", "#F", "#False", "#tru",
+            "#\\a", "#\\x", "#\\x41", "#\\X1F607", "#\\newline", "#\\NewLine", "#\\spaces", "#\\😀", "#\\(",
+            "42", "+42", "-42", "#d56", "#D-42", "#Xcafebabe", "#x-DeadBeef", "#o666", "#O-644", "#B-1101", "#b101",
+            "123456789012345678901234567890", "#x123456789abcdef0123",
+            "42.", "#d42.", ".42e2", "4.2e1", "42.e0", "42e0", "+.5", "-1.5", "1.2.3", "1e-5",
+            "0.1", "-0.0", "0.000123", "123456.789e3", "3.14159265358979323846", "1e300", "0.5e400",
+            "+nan.0", "-nan.0", "+inf.0", "-inf.0", "-Inf.0",
+            "\"a\"", "\"\\x42;\"", "\"\\X42;\"", "\"a\\nb\"", "\"a\\\"b\"", "\"a|b\"", "\"\\  \n  b\"", "\"\\a\\b\\t\\r\"",
+            "call-with-current-continuation", "=", "+", "-", "...", "+a", "-.a", ".a", "a.b", "42abc",
+            "|a|", "|\\x42;|", "|a\\nb|", "|a\"b|", "|a\\|b|", "|\\  \n  b|", "||",
+            "#u8()", "#U8(42)", "#u8(42 #b111100 #o42 #d42 #x42)", "#u8(1 #;(a b) 2)", "#u8( 0 255 )",
+            "()", "(#t 42 #f)", "(1 .a)", "(#t . #f)", "(#t 42 . #f)", "(1 . (2 3))", "(1 . (2 . 3))", "(1 . #;2 3)",
+            "#()", "#(#t 42 #f)", "#(1 #(2) (3 . 4))",
+            "(define (fact n) (if (= n 0) 1 (* n (- n 1))))",
+            "'a", "`a", ",a", ",@a", "'  a", "`(',@a)", "'#;a b", "''a",
+            "(1 2 #|2.5|# 3)", "(1 2 #| #|2.5|# 2.75 |# 3)", "(1 2 #;2.5 3)", "(1 2 #; #;2.5 2.75 3)", "(1 2 #; '2.5 3)",
+            "(1 ;c\n2)", "(1 ;c\r\n2)", " \t\r\n 1", "1 2", "(1) )",
+    };
+
+    @Test
+    public void SExprReader_agrees_with_antlr_parser() {
+        Assertions.assertAll(Arrays.stream(INPUTS).map(input -> () ->
+                Assertions.assertEquals(
+                        SExprParser.parse(input, SExprParser.Engine.ANTLR),
+                        SExprParser.parse(input, SExprParser.Engine.READER),
+                        input)));
+    }
+
+    @Test
+    public void SExprReader_reads_datums_in_sequence() {
+        SExprReader reader = new SExprReader("1 (2 3) #;4 ; comment\n 'five #| end |#");
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(Optional.of(SExprs.numberValue(1)), reader.read()),
+                () -> Assertions.assertEquals(Optional.of(SExprParser.parse("(2 3)")), reader.read()),
+                () -> Assertions.assertEquals(Optional.of(SExprParser.parse("'five")), reader.read()),
+                () -> Assertions.assertEquals(Optional.empty(), reader.read())
+        );
+    }
+
+    @Test
+    public void SExprReader_reads_deeply_nested_list() {
+        int depth = 100000;
+        String input = String.join("", Collections.nCopies(depth, "(")) + String.join("", Collections.nCopies(depth, ")"));
+        SExpr expr = SExprParser.parse(input, SExprParser.Engine.READER);
+        for (int i = 1; i < depth; ++i) {
+            expr = expr.getListElements().get().get(0);
+        }
+        Assertions.assertEquals(SExprs.listValue(), expr);
+    }
+
+    @Test
+    public void SExprReader_signals_error_for_invalid_input() {
+        Assertions.assertAll(Arrays.stream(new String[]{
+                "", "   ", "#;1", ".", "(", "(1", ")", "( . 1)", "(1 .)", "(a . b c)", "(1 . 2 . 3)", "'",
+                "#(", "#u8(a)", "#u8(-1)", "#u8(0.0)", "#u8(#x100)", "#u8 (1)", "#d", "#e1", "#x", "#\\",
+                "\"abc", "\"a\\qb\"", "\"\\x41\"", "|abc", "#|#||#1", "[1]",
+        }).map(input -> () ->
+                Assertions.assertThrows(Exception.class,
+                        () -> SExprParser.parse(input, SExprParser.Engine.READER),
+                        input)));
+    }
+
+    @Test
+    public void SExprReader_reads_datums_from_reader() {
+        // a reader returning one character at a time exercises every buffer refill path
+        String input = Arrays.stream(INPUTS)
+                .filter(s -> !s.equals("(1) )"))
+                .collect(Collectors.joining("\n"));
+        Reader slow = new StringReader(input) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1));
+            }
+        };
+        List<SExpr> expected = new SExprReader(input).stream().collect(Collectors.toList());
+        try (Stream<SExpr> actual = SExprParser.parseAll(slow)) {
+            Assertions.assertEquals(expected, actual.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void SExprReader_streams_many_datums_from_input_stream() {
+        int count = 100000;
+        String input = IntStream.range(0, count)
+                .mapToObj(i -> "(item " + i + " \"" + i + "\" #u8(" + (i % 256) + "))")
+                .collect(Collectors.joining("\n"));
+        try (Stream<SExpr> datums = SExprParser.parseAll(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)))) {
+            Assertions.assertEquals(count, datums.count());
+        }
+    }
+
+    @Test
+    public void SExprReader_reports_error_location_in_stream() {
+        SExprReader reader = new SExprReader(new StringReader("1\n2\n  )"));
+        reader.read();
+        reader.read();
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class, reader::read);
+        Assertions.assertTrue(e.getMessage().startsWith("line 3:2 "), e.getMessage());
+    }
+
+    @Test
+    public void SExprReader_reports_error_line_after_crlf_across_refill() {
+        // the CR and the LF of a line end straddle the end of the first 8K read
+        Assertions.assertAll(IntStream.rangeClosed(8185, 8195).mapToObj(pad -> () -> {
+            String input = " ".repeat(pad) + "a\r\nb\r\n)";
+            RuntimeException expected = Assertions.assertThrows(RuntimeException.class,
+                    () -> new SExprReader(input).stream().count());
+            RuntimeException actual = Assertions.assertThrows(RuntimeException.class,
+                    () -> new SExprReader(new StringReader(input)).stream().count(), "pad " + pad);
+            Assertions.assertTrue(expected.getMessage().startsWith("line 3:0 "), expected.getMessage());
+            Assertions.assertEquals(expected.getMessage(), actual.getMessage(), "pad " + pad);
+        }));
+    }
+
+    @Test
+    public void SExprReader_reports_hex_escape_error_across_refill() {
+        // the escape and the string start straddle the end of the first 8K read
+        Assertions.assertAll(IntStream.rangeClosed(8185, 8195).mapToObj(pad -> () -> {
+            String input = " ".repeat(pad) + "\"\\x;\"";
+            RuntimeException expected = Assertions.assertThrows(RuntimeException.class,
+                    () -> new SExprReader(input).read());
+            RuntimeException actual = Assertions.assertThrows(RuntimeException.class,
+                    () -> new SExprReader(new StringReader(input)).read(), "pad " + pad);
+            Assertions.assertEquals("line 1:" + pad + " malformed hex escape", expected.getMessage());
+            Assertions.assertEquals(expected.getMessage(), actual.getMessage(), "pad " + pad);
+        }));
+    }
+
+    @Test
+    public void SExprReader_reports_pull_events() {
+        SExprReader reader = new SExprReader("(a #;(b) 1 . #(\"s\" #u8(1 2)))  `#\\x");
+        List<SExprReader.Event> events = new ArrayList<>();
+        SExprReader.Event e;
+        while ((e = reader.nextEvent()) != SExprReader.Event.END_OF_INPUT) {
+            events.add(e);
+        }
+        Assertions.assertEquals(Arrays.asList(
+                SExprReader.Event.START_LIST,
+                SExprReader.Event.SYMBOL,
+                SExprReader.Event.INTEGER,
+                SExprReader.Event.DOT,
+                SExprReader.Event.START_VECTOR,
+                SExprReader.Event.STRING,
+                SExprReader.Event.BYTEVECTOR,
+                SExprReader.Event.END_VECTOR,
+                SExprReader.Event.END_LIST,
+                SExprReader.Event.START_ABBREVIATION,
+                SExprReader.Event.CHARACTER,
+                SExprReader.Event.END_ABBREVIATION
+        ), events);
+    }
+
+    @Test
+    public void SExprReader_pushes_events_to_handler() {
+        int[] symbols = new int[1];
+        SExprHandler countSymbols = new SExprHandler() {
+            @Override
+            public void symbol(CharSequence name) {
+                symbols[0]++;
+            }
+        };
+        SExprReader reader = new SExprReader("(define (f x) (g 'x 1)) 42");
+        Assertions.assertAll(
+                () -> Assertions.assertTrue(reader.read(countSymbols)),
+                () -> Assertions.assertEquals(5, symbols[0]),
+                () -> Assertions.assertTrue(reader.read(countSymbols)),
+                () -> Assertions.assertFalse(reader.read(countSymbols))
+        );
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static io.github.leque.sexpr.tree.SExprSelector.any;
+import static io.github.leque.sexpr.tree.SExprSelector.head;
+import static io.github.leque.sexpr.tree.SExprSelector.index;
+
+class SExprSelectorTest {
+    private static List<SExpr> parseAll(String input) {
+        List<SExpr> result = new ArrayList<>();
+        new SExprReader(input).iterator().forEachRemaining(result::add);
+        return result;
+    }
+
+    @Test
+    public void SExprSelector_selects_by_head_and_index() {
+        String input = "(config (client 1 2 3) (server \"host\" 8080 #t) (server \"other\" (80 81) #f)) (config (server a))";
+        SExprSelector selector = SExprSelector.of(head("config"), head("server"), index(2));
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(parseAll("8080 (80 81)"), selector.select(input)),
+                () -> Assertions.assertEquals(Optional.of(SExprParser.parse("8080")),
+                        selector.selectFirst(new SExprReader(input))),
+                () -> Assertions.assertEquals(parseAll("(server \"host\" 8080 #t) (server \"other\" (80 81) #f) (server a)"),
+                        SExprSelector.of(head("config"), head("server")).select(input)),
+                () -> Assertions.assertEquals(parseAll("(config (server a))"),
+                        SExprSelector.of(index(1)).select(input))
+        );
+    }
+
+    @Test
+    public void SExprSelector_skips_strings_symbols_characters_and_comments() {
+        String deep = String.join("", Collections.nCopies(100000, "(")) + String.join("", Collections.nCopies(100000, ")"));
+        String input = "(config (skip \")(\\\"(\" |)(\\|| #\\( #\\) #\\; ; )\n #| ) #| ( |# |# #;(x) #u8(1 2)) "
+                + deep + " #;(server x y z) (server a b c) (server . (d e f)))";
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(parseAll("c f"),
+                        SExprSelector.of(head("config"), head("server"), index(3)).select(input)),
+                () -> Assertions.assertThrows(RuntimeException.class,
+                        () -> SExprSelector.of(index(0), index(2)).select("(a (\"b)\" c"))
+        );
+    }
+
+    @Test
+    public void SExprSelector_selects_from_abbreviations_vectors_and_dotted_lists() {
+        String input = "(a 'b #(c d) (e . f)) ,g";
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(parseAll("quote"), SExprSelector.of(index(0), index(1), index(0)).select(input)),
+                () -> Assertions.assertEquals(parseAll("b"), SExprSelector.of(index(0), index(1), index(1)).select(input)),
+                () -> Assertions.assertEquals(parseAll("d"), SExprSelector.of(index(0), index(2), index(1)).select(input)),
+                () -> Assertions.assertEquals(parseAll("e"), SExprSelector.of(index(0), index(3), any()).select(input)),
+                () -> Assertions.assertEquals(parseAll(",g"), SExprSelector.of(head("unquote")).select(input)),
+                () -> Assertions.assertEquals(parseAll("a 'b #(c d) e"),
+                        SExprSelector.of(any(), any()).select("(a) ('b) (#(c d)) (e . f)"))
+        );
+    }
+
+    @Test
+    public void SExprSelector_agrees_with_full_parse() {
+        String input = "((a b) #(c (d e)) 'f (g . h) \"i\" #\\j 1.5)";
+        SExpr whole = SExprParser.parse(input);
+        List<SExpr> elements = whole.elements();
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(elements, SExprSelector.of(index(0), any()).select(input)),
+                () -> Assertions.assertEquals(elements.get(1).elements().get(1).elements(),
+                        SExprSelector.of(index(0), index(1), index(1), any()).select(input))
+        );
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class SExprTapeTest {
+    private static final String[] INPUTS = {
+            "#t", "#\\x41", "-42", "123456789012345678901234567890", "4.2", "3.14159265358979323846",
+            "-inf.0", "+nan.0", "\"a\\nb\"", "|a b|", "#u8(0 1 255)",
+            "()", "#()", "(a b a)", "(a . b)", "(a . (b . (c)))", "(a . ())", "(a . 'b)", "(a . #(b))",
+            "'(a ,b ,@c `d)", "#(1 #(2) (3 . 4))", "(a #;(b) c)",
+    };
+
+    @Test
+    public void SExprTape_materializes_the_same_datums_as_the_reader() {
+        Assertions.assertAll(Arrays.stream(INPUTS).map(input -> () -> {
+            SExpr expected = SExprParser.parse(input, SExprParser.Engine.READER);
+            SExpr actual = SExprTape.parse(input).get(0);
+            Assertions.assertAll(
+                    () -> Assertions.assertEquals(expected, actual, input),
+                    () -> Assertions.assertEquals(expected.hashCode(), actual.hashCode(), input),
+                    () -> Assertions.assertEquals(expected.toWrittenString(), actual.toWrittenString(), input)
+            );
+        }));
+    }
+
+    @Test
+    public void SExprTape_cursor_walks_nodes_with_spans() {
+        SExprTape tape = SExprTape.parse("(define (f x) 'x) (1 . 2.5)");
+        SExprTape.Cursor cursor = tape.cursor();
+        List<String> nodes = new ArrayList<>();
+        boolean down = true;
+        while (true) {
+            nodes.add(cursor.kind() + " " + cursor.depth() + " " + cursor.start() + "-" + cursor.end()
+                    + (cursor.kind() == SExprTape.Kind.SYMBOL ? " " + cursor.symbolName() : "")
+                    + (cursor.isTail() ? " tail" : ""));
+            if (cursor.firstChild())
+                continue;
+            while (!cursor.nextSibling()) {
+                if (!cursor.parent()) {
+                    down = false;
+                    break;
+                }
+            }
+            if (!down)
+                break;
+        }
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(2, tape.datumCount()),
+                () -> Assertions.assertEquals(List.of(
+                        "LIST 0 0-17",
+                        "SYMBOL 1 1-7 define",
+                        "LIST 1 8-13",
+                        "SYMBOL 2 9-10 f",
+                        "SYMBOL 2 11-12 x",
+                        "LIST 1 14-16",
+                        "SYMBOL 2 14-15 quote",
+                        "SYMBOL 2 15-16 x",
+                        "DOTTED_LIST 0 18-27",
+                        "FIXNUM 1 19-20",
+                        "FLONUM 1 23-26 tail"
+                ), nodes),
+                () -> Assertions.assertEquals(3, tape.cursor().count()),
+                () -> Assertions.assertEquals(1, tape.cursor(1).count()),
+                () -> Assertions.assertThrows(UnsupportedOperationException.class, () -> tape.cursor().longValue())
+        );
+    }
+
+    @Test
+    public void SExprTape_materializes_elements_once() {
+        SExprTape tape = SExprTape.parse("(a (b) a)");
+        SExpr datum = tape.get(0);
+        Assertions.assertAll(
+                () -> Assertions.assertSame(datum.elements().get(1), datum.elements().get(1)),
+                () -> Assertions.assertSame(datum.elements().get(0), datum.elements().get(2)),
+                () -> Assertions.assertThrows(UnsupportedOperationException.class,
+                        () -> datum.elements().set(0, SExprs.trueValue())),
+                () -> Assertions.assertEquals(SExprParser.parse("(b)"), tape.cursor().toSExpr().elements().get(1))
+        );
+    }
+
+    @Test
+    public void SExprTape_handles_deeply_nested_data() {
+        int depth = 100000;
+        String input = String.join("", Collections.nCopies(depth, "(")) + "x" + String.join("", Collections.nCopies(depth, ")"));
+        SExprTape tape = SExprTape.parse(input);
+        SExprTape.Cursor cursor = tape.cursor();
+        while (cursor.firstChild()) {
+        }
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(depth + 1, tape.size()),
+                () -> Assertions.assertEquals(depth, cursor.depth()),
+                () -> Assertions.assertEquals("x", cursor.symbolName()),
+                () -> Assertions.assertEquals(input, tape.get(0).toWrittenString())
+        );
+    }
+}
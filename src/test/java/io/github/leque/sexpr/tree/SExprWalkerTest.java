@@ -0,0 +1,111 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+class SExprWalkerTest {
+    @Test
+    public void SExprWalker_visits_in_pre_and_post_order() {
+        List<String> events = new ArrayList<>();
+        boolean completed = SExprWalker.walk(SExprParser.parse("(a (b . c) #(d))"), new SExprWalker.Listener() {
+            @Override
+            public SExprWalker.Action enter(SExpr expr, int depth) {
+                events.add("enter " + expr + " " + depth);
+                return SExprWalker.Action.CONTINUE;
+            }
+
+            @Override
+            public SExprWalker.Action leave(SExpr expr, int depth) {
+                events.add("leave " + expr + " " + depth);
+                return SExprWalker.Action.CONTINUE;
+            }
+        });
+        Assertions.assertAll(
+                () -> Assertions.assertTrue(completed),
+                () -> Assertions.assertEquals(List.of(
+                        "enter (a (b . c) #(d)) 0",
+                        "enter a 1", "leave a 1",
+                        "enter (b . c) 1",
+                        "enter b 2", "leave b 2",
+                        "enter c 2", "leave c 2",
+                        "leave (b . c) 1",
+                        "enter #(d) 1",
+                        "enter d 2", "leave d 2",
+                        "leave #(d) 1",
+                        "leave (a (b . c) #(d)) 0"
+                ), events)
+        );
+    }
+
+    @Test
+    public void SExprWalker_skips_children_and_terminates() {
+        SExpr expr = SExprParser.parse("(a (quote (b c)) d e)");
+        List<String> symbols = new ArrayList<>();
+        boolean completed = SExprWalker.walk(expr, new SExprWalker.Listener() {
+            @Override
+            public SExprWalker.Action enter(SExpr expr, int depth) {
+                if (expr.isList() && !expr.elements().isEmpty()
+                        && expr.elements().get(0).equals(SExprs.symbolValue("quote")))
+                    return SExprWalker.Action.SKIP_CHILDREN;
+                if (expr.isSymbol()) {
+                    symbols.add(expr.symbolName());
+                    if (expr.symbolName().equals("d"))
+                        return SExprWalker.Action.TERMINATE;
+                }
+                return SExprWalker.Action.CONTINUE;
+            }
+        });
+        Assertions.assertAll(
+                () -> Assertions.assertFalse(completed),
+                () -> Assertions.assertEquals(List.of("a", "d"), symbols)
+        );
+    }
+
+    @Test
+    public void SExprWalker_folds_deeply_nested_list() {
+        int depth = 100000;
+        String input = String.join("", Collections.nCopies(depth, "(")) + "x" + String.join("", Collections.nCopies(depth, ")"));
+        SExpr expr = SExprParser.parse(input, SExprParser.Engine.READER);
+        int height = SExprWalker.fold(expr, new SExprWalker.Folder<Integer>() {
+            @Override
+            public Integer atom(SExpr expr) {
+                return 0;
+            }
+
+            @Override
+            public Integer compound(SExpr expr, List<Integer> children) {
+                return 1 + children.stream().mapToInt(Integer::intValue).max().orElse(0);
+            }
+        });
+        Assertions.assertEquals(depth, height);
+    }
+
+    @Test
+    public void SExprVisitor_dispatches_on_node_type() {
+        SExprVisitor<String> visitor = new SExprVisitor<>() {
+            @Override
+            public String visitDefault(SExpr expr) {
+                return "other";
+            }
+
+            @Override
+            public String visitSymbol(SExprs.SymbolValue expr) {
+                return "symbol " + expr.symbolName();
+            }
+
+            @Override
+            public String visitNumber(SExprs.NumberValue expr) {
+                return "number " + expr;
+            }
+        };
+        Assertions.assertAll(
+                () -> Assertions.assertEquals("symbol a", SExprParser.parse("a").accept(visitor)),
+                () -> Assertions.assertEquals("number 42", SExprParser.parse("42").accept(visitor)),
+                () -> Assertions.assertEquals("other", SExprParser.parse("(a)").accept(visitor))
+        );
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+class SExprWriterTest {
+    private static final String[] INPUTS = {
+            "#t", "#f", "#\\a", "#\\x", "#\\A", "#\\alarm", "#\\x1", "#\\😀", "#\\(",
+            "42", "-9223372036854775808", "123456789012345678901234567890", "4.2", "0.0001",
+            "+inf.0", "-inf.0", "+nan.0",
+            "\"a\\\"b\\x7;\"", "\"😀 é\"", "sym", "|a b|", "|a\\|b|", "|1|", "|+inf.0|", "||",
+            "#u8()", "#u8(0 127 255)", "()", "(1 2 3)", "(1 . 2)", "(1 2 . 3)", "#()", "#(1 #(2) (3 . 4))",
+            "'a", "`(a ,b ,@c)", "(quote a b)",
+    };
+
+    @Test
+    public void SExprWriter_round_trips() {
+        Assertions.assertAll(Arrays.stream(INPUTS).map(input -> () -> {
+            SExpr expr = SExprParser.parse(input);
+            Assertions.assertEquals(input, expr.toWrittenString(), input);
+            Assertions.assertEquals(expr, SExprParser.parse(expr.toWrittenString()), input);
+        }));
+    }
+
+    @Test
+    public void SExprWriter_writes_to_every_destination() throws IOException {
+        SExprWriter writer = new SExprWriter();
+        String big = "(" + String.join(" ", Collections.nCopies(5000, "\"😀 é\" symbol 12345")) + ")";
+        for (String input : new String[]{"(\"😀 é\" #\\😀)", big}) {
+            SExpr expr = SExprParser.parse(input);
+            String expected = writer.writeToString(expr);
+            byte[] expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
+
+            char[] chars = new char[(int) writer.writtenLength(expr) + 2];
+            int n = writer.write(expr, chars, 2);
+            StringWriter out = new StringWriter();
+            writer.write(expr, out);
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            writer.writeUtf8(expr, stream);
+            ByteBuffer buffer = ByteBuffer.allocate((int) writer.utf8Length(expr));
+            writer.writeUtf8(expr, buffer);
+
+            Assertions.assertAll(
+                    () -> Assertions.assertEquals(expected.length(), n),
+                    () -> Assertions.assertEquals(expected, new String(chars, 2, n)),
+                    () -> Assertions.assertEquals(expected, out.toString()),
+                    () -> Assertions.assertArrayEquals(expectedBytes, stream.toByteArray()),
+                    () -> Assertions.assertFalse(buffer.hasRemaining()),
+                    () -> Assertions.assertArrayEquals(expectedBytes, buffer.array())
+            );
+        }
+    }
+
+    @Test
+    public void SExprWriter_rejects_too_small_destination() {
+        SExprWriter writer = new SExprWriter();
+        SExpr expr = SExprParser.parse("(a b c)");
+        Assertions.assertAll(
+                () -> Assertions.assertThrows(IndexOutOfBoundsException.class,
+                        () -> writer.write(expr, new char[6], 0)),
+                () -> Assertions.assertEquals("(a b c)", writer.writeToString(expr))
+        );
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class StructuralIndexTest {
+    private static List<String> describe(StructuralIndex index) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < index.size(); ++i)
+            result.add((index.isOpen(i) ? "(" : ")") + index.offset(i) + ":" + index.match(i));
+        return result;
+    }
+
+    @Test
+    public void StructuralIndex_ignores_parentheses_in_strings_symbols_characters_and_comments() {
+        String input = "(a \"(\\\")\" |)\\|(| #\\( #\\) ; ()\n #| ( #| ) |# ( |# #;(b) #(c) #u8(1)) ) é(";
+        StructuralIndex index = StructuralIndex.of(input.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(List.of(
+                        "(0:7", "(51:2", ")53:1", "(56:4", ")58:3", "(63:6", ")65:5", ")66:0", ")68:-1", "(72:-1"
+                ), describe(index)),
+                () -> Assertions.assertEquals(1, index.indexOf(51)),
+                () -> Assertions.assertEquals(-1, index.indexOf(52))
+        );
+    }
+
+    @Test
+    public void StructuralIndex_agrees_with_scalar_scan() {
+        String[] tokens = {"(", ")", "#(", "\"", "\\", "|", ";", "\n", "#|", "|#", "#\\", "#;", " ", "abc", "é", "12345678"};
+        Random random = new Random(42);
+        for (int n = 0; n < 500; ++n) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(200);
+            for (int i = 0; i < length; ++i)
+                builder.append(tokens[random.nextInt(tokens.length)]);
+            byte[] bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+            int from = random.nextInt(3) == 0 ? 0 : Math.min(bytes.length, random.nextInt(5));
+            Assertions.assertEquals(describe(StructuralIndex.ofScalar(bytes, from, bytes.length)),
+                    describe(StructuralIndex.of(bytes, from, bytes.length)), builder.toString());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.leque.sexpr.tree;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class SymbolTableTest {
+    @Test
+    public void SymbolTable_returns_canonical_symbols() {
+        SymbolTable symbols = new SymbolTable();
+        SExpr foo = symbols.intern("foo");
+        Assertions.assertAll(
+                () -> Assertions.assertSame(foo, symbols.intern(new String("foo"))),
+                () -> Assertions.assertEquals(SExprs.symbolValue("foo"), foo),
+                () -> Assertions.assertNotSame(foo, symbols.intern("bar"))
+        );
+    }
+
+    @Test
+    public void SExprParser_interns_symbols_with_both_engines() {
+        SymbolTable symbols = new SymbolTable();
+        String input = "(define (f x) (g x 'x |x| `(,x)))";
+        for (SExprParser.Engine engine : SExprParser.Engine.values()) {
+            SExpr expr = SExprParser.parse(input, engine, symbols);
+            Assertions.assertEquals(SExprParser.parse(input), expr);
+            List<SExpr> elems = expr.getListElements().get();
+            SExpr x = elems.get(1).getListElements().get().get(1);
+            Assertions.assertSame(symbols.intern("x"), x);
+            Assertions.assertSame(x, elems.get(2).getListElements().get().get(1));
+            Assertions.assertSame(symbols.intern(SExprs.QUOTE_NAME),
+                    elems.get(2).getListElements().get().get(2).getListElements().get().get(0));
+        }
+    }
+
+    @Test
+    public void SymbolTable_is_thread_safe() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<SExpr>>> futures = IntStream.range(0, 8)
+                    .mapToObj(t -> executor.submit(() -> IntStream.range(0, 10000)
+                            .mapToObj(i -> symbols.intern("sym" + (i % 100)))
+                            .collect(Collectors.toList())))
+                    .collect(Collectors.toList());
+            Set<SExpr> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<List<SExpr>> future : futures) {
+                distinct.addAll(future.get());
+            }
+            Assertions.assertEquals(100, distinct.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
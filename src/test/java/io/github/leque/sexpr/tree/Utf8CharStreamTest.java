@@ -0,0 +1,98 @@
+package io.github.leque.sexpr.tree;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class Utf8CharStreamTest {
+    private static final String MIXED;
+
+    static {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50; ++i) {
+            builder.append("(a").append(i).append(" \"café ").append(i).append(" 日本語 😀\" #\\λ)");
+        }
+        MIXED = builder.toString();
+    }
+
+    private static Utf8CharStream utf8(String s) {
+        return new Utf8CharStream(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void assertSameStream(String s) {
+        CharStream expected = CharStreams.fromString(s);
+        Utf8CharStream actual = utf8(s);
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i <= expected.size(); ++i) {
+            Assertions.assertEquals(expected.LA(1), actual.LA(1), "LA(1) at " + i);
+            Assertions.assertEquals(expected.LA(2), actual.LA(2), "LA(2) at " + i);
+            Assertions.assertEquals(expected.LA(-1), actual.LA(-1), "LA(-1) at " + i);
+            Assertions.assertEquals(expected.index(), actual.index());
+            if (i < expected.size()) {
+                expected.consume();
+                actual.consume();
+            }
+        }
+        Assertions.assertEquals(IntStream.EOF, actual.LA(1));
+        Assertions.assertThrows(IllegalStateException.class, actual::consume);
+        for (int i = expected.size(); i >= 0; i -= 7) {
+            expected.seek(i);
+            actual.seek(i);
+            Assertions.assertEquals(expected.LA(1), actual.LA(1), "seek " + i);
+            Interval interval = Interval.of(i / 2, i + 10);
+            Assertions.assertEquals(expected.getText(interval), actual.getText(interval));
+        }
+    }
+
+    @Test
+    public void Utf8CharStream_behaves_like_CodePointCharStream() {
+        Assertions.assertAll(
+                () -> assertSameStream(""),
+                () -> assertSameStream("(define (f x) (* x x))"),
+                () -> assertSameStream(MIXED)
+        );
+    }
+
+    @Test
+    public void Utf8CharStream_replaces_malformed_bytes() {
+        byte[] bytes = {'a', (byte) 0xc3, 'b', (byte) 0xed, (byte) 0xa0, (byte) 0x80, (byte) 0xf0, (byte) 0x9f};
+        Utf8CharStream stream = new Utf8CharStream(ByteBuffer.wrap(bytes));
+        Assertions.assertEquals("a�b�����", stream.toString());
+    }
+
+    @Test
+    public void SExprParser_is_able_to_parse_utf8_bytes() {
+        String input = "(" + MIXED + ")";
+        SExpr expected = SExprParser.parse(input);
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(expected, SExprParser.parse(bytes)),
+                () -> Assertions.assertEquals(expected, SExprParser.parse(bytes, SExprParser.Engine.READER)),
+                () -> Assertions.assertEquals(expected, SExprParser.parse(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip())),
+                () -> Assertions.assertEquals(expected,
+                        SExprParser.parse(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip(), SExprParser.Engine.READER))
+        );
+    }
+
+    @Test
+    public void SExprParser_is_able_to_parse_mapped_file(@TempDir Path dir) throws IOException {
+        String input = "(" + MIXED + ")";
+        Path file = dir.resolve("input.scm");
+        Files.write(file, input.getBytes(StandardCharsets.UTF_8));
+        SExpr expected = SExprParser.parse(input);
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(expected, SExprParser.parse(file)),
+                () -> Assertions.assertEquals(expected, SExprParser.parse(file, SExprParser.Engine.READER))
+        );
+    }
+}